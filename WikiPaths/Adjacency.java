@@ -0,0 +1,57 @@
+import java.util.function.IntConsumer;
+
+/**
+ * Read-only access to an unweighted, directed graph whose vertices are the
+ * ints 0 through vertexCount() - 1. This is everything a search needs, so
+ * searches work the same whether the links live in int arrays on the heap
+ * (CompactGraph) or in a memory-mapped file (MappedGraph).
+ */
+public interface Adjacency {
+
+    /**
+     * @return the number of vertices in this graph
+     */
+    int vertexCount();
+
+    /**
+     * @return the number of (distinct) edges in this graph
+     */
+    long edgeCount();
+
+    /**
+     * @param v a vertex
+     * @return the number of edges leaving v
+     */
+    int degree(int v);
+
+    /**
+     * Passes each neighbor of v, in increasing order, to action.
+     * @param v a vertex
+     * @param action what to do with each neighbor
+     */
+    void forEachNeighbor(int v, IntConsumer action);
+
+    /**
+     * @return a new cursor over this graph's neighbor lists
+     */
+    Cursor cursor();
+
+    /**
+     * Walks one neighbor list at a time, in increasing order. A cursor can be
+     * reset to another vertex as often as needed, so a search can use the same
+     * one for every vertex it expands and allocate nothing per step.
+     */
+    interface Cursor {
+
+        /**
+         * Moves this cursor to the start of v's neighbors.
+         * @param v a vertex
+         */
+        void reset(int v);
+
+        /**
+         * @return the next neighbor, or -1 if there are no more
+         */
+        int next();
+    }
+}
@@ -0,0 +1,297 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * An ArticleIndex that packs every name into one array instead of keeping a
+ * String (and a boxed id, and a map entry) per article in each direction.
+ *
+ * The UTF-8 bytes of all the names sit back to back in one byte[], and an
+ * int[] of offsets says where each one starts, which covers id to name.
+ * Name to id is an open-addressed hash table of ids (linear probing, at most
+ * half full), where the key of an id is its bytes in the packed array. So
+ * the whole dictionary is three primitive arrays, and looking up a name
+ * that is already in bytes (as the loader's are) allocates nothing.
+ */
+public final class ArticleDictionary implements ArticleIndex {
+
+    /* The name of article i is bytes[offsets[i]] through bytes[offsets[i + 1] - 1]
+     */
+    private final byte[] bytes;
+    private final int[] offsets;
+
+    /* The hash table: each slot holds an id, or -1 if it is empty. Its length
+     * is a power of two.
+     */
+    private final int[] table;
+
+    private ArticleDictionary(byte[] bytes, int[] offsets) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+
+        final int size = offsets.length - 1;
+        table = new int[Integer.highestOneBit(Math.max(1, size)) * 4];
+        Arrays.fill(table, -1);
+        for (int id = 0; id < size; id++) {
+            final int start = offsets[id];
+            final int end = offsets[id + 1];
+            int slot = hash(bytes, start, end) & (table.length - 1);
+            while (table[slot] >= 0 && !equal(table[slot], bytes, start, end)) {
+                slot = (slot + 1) & (table.length - 1);
+            }
+            // A name that appears twice refers to its later id
+            table[slot] = id;
+        }
+    }
+
+    @Override
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    @Override
+    public int id(String article) {
+        final byte[] key = article.getBytes(StandardCharsets.UTF_8);
+        return id(key, 0, key.length);
+    }
+
+    /**
+     * Looks up a name that is already UTF-8 encoded, without decoding it.
+     * @param key holds the name
+     * @param start index in key of the name's first byte
+     * @param end index in key just after the name's last byte
+     * @return the article's id, or -1 if there is no such article
+     */
+    public int id(byte[] key, int start, int end) {
+        int slot = hash(key, start, end) & (table.length - 1);
+        while (table[slot] >= 0) {
+            if (equal(table[slot], key, start, end)) {
+                return table[slot];
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Like id(byte[], int, int), for names still sitting in a buffer.
+     * @param key holds the name
+     * @param start index in key of the name's first byte
+     * @param end index in key just after the name's last byte
+     * @return the article's id, or -1 if there is no such article
+     */
+    public int id(ByteBuffer key, int start, int end) {
+        int slot = hash(key, start, end) & (table.length - 1);
+        while (table[slot] >= 0) {
+            if (equal(table[slot], key, start, end)) {
+                return table[slot];
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return -1;
+    }
+
+    @Override
+    public String name(int id) {
+        return new String(bytes, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param positions for each new id, the current id of the article to give it
+     *      (a permutation of the ids)
+     * @return this dictionary with its ids renumbered. If a name appears more
+     *      than once, it refers to whichever of its articles has the later new id.
+     */
+    ArticleDictionary reorder(int[] positions) {
+        final byte[] moved = new byte[bytes.length];
+        final int[] starts = new int[offsets.length];
+        for (int id = 0; id < positions.length; id++) {
+            final int from = offsets[positions[id]];
+            final int length = offsets[positions[id] + 1] - from;
+            System.arraycopy(bytes, from, moved, starts[id], length);
+            starts[id + 1] = starts[id] + length;
+        }
+        return new ArticleDictionary(moved, starts);
+    }
+
+    /**
+     * @return roughly how many bytes of heap this dictionary occupies
+     */
+    public long footprint() {
+        return 16L * 3 + bytes.length + 4L * offsets.length + 4L * table.length;
+    }
+
+    /* Whether article id's name is key[start] through key[end - 1]
+     */
+    private boolean equal(int id, byte[] key, int start, int end) {
+        final int length = offsets[id + 1] - offsets[id];
+        if (length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[offsets[id] + i] != key[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equal(int id, ByteBuffer key, int start, int end) {
+        final int length = offsets[id + 1] - offsets[id];
+        if (length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[offsets[id] + i] != key.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* FNV-1a, with its bits spread out so that the low ones (the only ones
+     * used to pick a slot) depend on all of them
+     */
+    private static int hash(byte[] key, int start, int end) {
+        int hash = 0x811c9dc5;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ (key[i] & 0xff)) * 0x01000193;
+        }
+        return mix(hash);
+    }
+
+    private static int hash(ByteBuffer key, int start, int end) {
+        int hash = 0x811c9dc5;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ (key.get(i) & 0xff)) * 0x01000193;
+        }
+        return mix(hash);
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        return hash ^ (hash >>> 13);
+    }
+
+    /**
+     * Packs names, in the order they are added, into an ArticleDictionary.
+     */
+    public static final class Builder {
+
+        private byte[] bytes = new byte[1024];
+        private int[] offsets = new int[64];
+        private int size;
+
+        /**
+         * Adds a name, given as bytes in a buffer.
+         * @param name holds the UTF-8 bytes of the name
+         * @param start index in name of the name's first byte
+         * @param end index in name just after the name's last byte
+         * @return the new article's id, which is one more than the last
+         */
+        public int add(ByteBuffer name, int start, int end) {
+            final int at = offsets[size];
+            room(end - start);
+            for (int i = start; i < end; i++) {
+                bytes[at + i - start] = name.get(i);
+            }
+            return next(at + end - start);
+        }
+
+        /**
+         * Adds a name.
+         * @param name the name
+         * @return the new article's id, which is one more than the last
+         */
+        public int add(String name) {
+            final byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            final int at = offsets[size];
+            room(encoded.length);
+            System.arraycopy(encoded, 0, bytes, at, encoded.length);
+            return next(at + encoded.length);
+        }
+
+        /**
+         * Freezes the names added so far. The builder should not be used
+         * afterwards.
+         * @return the dictionary
+         */
+        public ArticleDictionary build() {
+            return new ArticleDictionary(
+                Arrays.copyOf(bytes, offsets[size]),
+                Arrays.copyOf(offsets, size + 1));
+        }
+
+        private void room(int length) {
+            final long needed = (long) offsets[size] + length;
+            if (needed > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Too many bytes of article names");
+            }
+            if (needed > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(Integer.MAX_VALUE - 8,
+                    Math.max(needed, 2L * bytes.length)));
+            }
+            if (size + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+        }
+
+        private int next(int end) {
+            offsets[++size] = end;
+            return size - 1;
+        }
+    }
+
+    /**
+     * Compares how much heap a vertex file's names take up in an
+     * ArticleDictionary versus a pair of HashMaps (what PathFinder used to
+     * keep), and prints both.
+     * @param args the vertex file
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: ArticleDictionary <vertex file>");
+            return;
+        }
+        final List<String> names = Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)
+            .stream()
+            .filter(line -> !line.equals("") && line.charAt(0) != '#')
+            .collect(Collectors.toList());
+
+        final long before = usedHeap();
+        final Map<String,Integer> articleToId = new HashMap<String,Integer>();
+        final Map<Integer,String> idToArticle = new HashMap<Integer,String>();
+        for (String name : names) {
+            // Copies, so the maps do not share Strings with 'names'
+            final String article = new String(name);
+            articleToId.put(article, idToArticle.size());
+            idToArticle.put(idToArticle.size(), article);
+        }
+        final long maps = usedHeap() - before;
+
+        final Builder bob = new Builder();
+        names.forEach(bob::add);
+        final ArticleDictionary dictionary = bob.build();
+
+        System.out.println(names.size() + " articles");
+        System.out.println("HashMaps:          ~" + maps + " bytes (measured; "
+            + articleToId.size() + " entries each)");
+        System.out.println("ArticleDictionary: " + dictionary.footprint() + " bytes");
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * The two-way correspondence between article names (as they appear in the
+ * vertex file, i.e., url-encoded) and the ids that stand for them in a graph.
+ * Ids are the ints 0 through size() - 1, numbered as the graph's
+ * VertexOrdering chose: in vertex file order only for FILE, and otherwise
+ * renumbered so that linked articles have nearby ids. The id of the article
+ * on a given line of the vertex file is the graph's VertexOrder's id() of
+ * that line (order::id). Articles added after loading are numbered after
+ * the loaded ones, in the order they were added.
+ */
+public interface ArticleIndex {
+
+    /**
+     * @return the number of articles
+     */
+    int size();
+
+    /**
+     * @param article the name of an article
+     * @return the article's id, or -1 if there is no such article
+     */
+    int id(String article);
+
+    /**
+     * @param id an article id
+     * @return the name of that article
+     */
+    String name(int id);
+}
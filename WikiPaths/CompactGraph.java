@@ -0,0 +1,167 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A frozen, unweighted, directed graph in compressed-sparse-row (CSR) form.
+ *
+ * Vertices are the ints 0 through vertexCount() - 1. The neighbors of a
+ * vertex v are targets[offsets[v]] through targets[offsets[v + 1] - 1], so
+ * the whole graph is two flat int arrays: no boxed Integers, no per-vertex
+ * objects, and a neighbor scan is a sequential read of one array slice.
+ *
+ * Instances are built once (by GraphLoader, or by freeze() from an edge
+ * list) and never change afterwards.
+ * Each neighbor list is sorted and free of duplicates, so two graphs built
+ * from the same links (in any order) are identical.
+ */
+public final class CompactGraph implements Adjacency {
+
+    /* offsets[v] is the index in 'targets' of v's first neighbor. It has
+     * one extra trailing entry, so that offsets[v + 1] always ends v's slice.
+     */
+    private final int[] offsets;
+
+    /* Every neighbor list, concatenated in vertex order
+     */
+    private final int[] targets;
+
+    CompactGraph(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    @Override
+    public int vertexCount() {
+        return offsets.length - 1;
+    }
+
+    @Override
+    public long edgeCount() {
+        return targets.length;
+    }
+
+    @Override
+    public int degree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    @Override
+    public void forEachNeighbor(int v, IntConsumer action) {
+        final int end = offsets[v + 1];
+        for (int i = offsets[v]; i < end; i++) {
+            action.accept(targets[i]);
+        }
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Cursor() {
+            private int next;
+            private int end;
+
+            @Override
+            public void reset(int v) {
+                next = offsets[v];
+                end = offsets[v + 1];
+            }
+
+            @Override
+            public int next() {
+                return next < end ? targets[next++] : -1;
+            }
+        };
+    }
+
+    /**
+     * Direct access to the arrays, for code that knows it has a CompactGraph:
+     * v's neighbors are target(e) for every e from firstEdge(v) (inclusive) to
+     * firstEdge(v + 1) (exclusive).
+     * @param v a vertex, or vertexCount() for the end of the last slice
+     * @return the index of v's first edge
+     */
+    public int firstEdge(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * @param e an edge index, as produced by firstEdge()
+     * @return the vertex that e points to
+     */
+    public int target(int e) {
+        return targets[e];
+    }
+
+    /**
+     * Builds the transpose of this graph: the same vertices, with every edge
+     * pointing the other way. Its neighbor lists are the in-links of this
+     * graph's vertices.
+     * @return the reversed graph
+     */
+    public CompactGraph reverse() {
+        final int vertices = vertexCount();
+
+        final int[] backOffsets = new int[vertices + 1];
+        for (int e = 0; e < targets.length; e++) {
+            backOffsets[targets[e] + 1]++;
+        }
+        for (int v = 0; v < vertices; v++) {
+            backOffsets[v + 1] += backOffsets[v];
+        }
+
+        // Sources are visited in increasing order, so every reversed slice
+        // comes out sorted (and, like this graph's, has no repeats)
+        final int[] cursor = Arrays.copyOf(backOffsets, vertices);
+        final int[] backTargets = new int[targets.length];
+        for (int v = 0; v < vertices; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                backTargets[cursor[targets[e]]++] = v;
+            }
+        }
+        return new CompactGraph(backOffsets, backTargets);
+    }
+
+    /* Turns an edge list into CSR form: count each vertex's out-degree,
+     * prefix-sum the counts into offsets, drop every edge into its slot,
+     * then sort and deduplicate each slice in place.
+     */
+    static CompactGraph freeze(int vertices, int[] froms, int[] tos, int edges) {
+
+        final int[] offsets = new int[vertices + 1];
+        for (int i = 0; i < edges; i++) {
+            offsets[froms[i] + 1]++;
+        }
+        for (int v = 0; v < vertices; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+
+        // 'cursor' is where the next edge out of each vertex goes
+        final int[] cursor = Arrays.copyOf(offsets, vertices);
+        final int[] targets = new int[edges];
+        for (int i = 0; i < edges; i++) {
+            targets[cursor[froms[i]]++] = tos[i];
+        }
+
+        return new CompactGraph(offsets, dedupe(offsets, targets));
+    }
+
+    /* Sorts each slice of targets and squeezes out repeats, rewriting
+     * offsets to match. Returns targets, trimmed if anything was dropped.
+     */
+    static int[] dedupe(int[] offsets, int[] targets) {
+        int out = 0;
+        int start = offsets[0];
+        for (int v = 0; v + 1 < offsets.length; v++) {
+            final int end = offsets[v + 1];
+            Arrays.sort(targets, start, end);
+            offsets[v] = out;
+            for (int i = start; i < end; i++) {
+                if (out == offsets[v] || targets[out - 1] != targets[i]) {
+                    targets[out++] = targets[i];
+                }
+            }
+            start = end;
+        }
+        offsets[offsets.length - 1] = out;
+        return out == targets.length ? targets : Arrays.copyOf(targets, out);
+    }
+}
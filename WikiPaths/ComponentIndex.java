@@ -0,0 +1,304 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The strongly connected components of a graph, and a summary of which
+ * components can reach which, so that most pairs of vertices with no path
+ * between them can be told apart in O(1) time instead of by a search that
+ * has to exhaust everything the start can reach.
+ *
+ * Components are found with Tarjan's algorithm, run with an explicit stack
+ * (the graph is far too deep to recurse over). Tarjan's algorithm finishes
+ * components in reverse topological order, so component ids are numbered
+ * that way: an edge between two components always goes from the higher id
+ * to the lower (or equal) one.
+ *
+ * Reachability between components is summarized as in GRAIL (Yildirim et
+ * al., "GRAIL: Scalable Reachability Index for Large Graphs"): each of a few
+ * depth-first traversals of the condensation (the DAG of components) gives
+ * every component an interval [low, rank], where rank is its post-order
+ * number and low is the least rank among everything it reaches. If c
+ * reaches d, d's interval lies inside c's in every traversal, so a pair
+ * whose intervals are not nested in any one of them has no path. Nested
+ * intervals prove nothing, and those pairs are left to a search.
+ */
+final class ComponentIndex {
+
+    /* How many traversals (so intervals per component) to keep. Each one
+     * rules out more of the unreachable pairs, for two ints per component.
+     */
+    private static final int TRAVERSALS = 3;
+
+    /* The component of each vertex
+     */
+    private final int[] component;
+
+    /* The number of vertices in each component
+     */
+    private final int[] sizes;
+
+    /* For component c and traversal i, labels[(c * TRAVERSALS + i) * 2] is
+     * its low and the next int its rank
+     */
+    private final int[] labels;
+
+    private ComponentIndex(int[] component, int[] sizes, int[] labels) {
+        this.component = component;
+        this.sizes = sizes;
+        this.labels = labels;
+    }
+
+    /**
+     * Finds the components of links, and labels its condensation.
+     * @param links the graph
+     * @return the index
+     */
+    static ComponentIndex build(Adjacency links) {
+        final int vertices = links.vertexCount();
+
+        // Tarjan's algorithm. 'order' is when each vertex was first reached
+        // (or -1 if it hasn't been), and 'low' the earliest vertex still on
+        // the component stack that it is known to reach. Each level of the
+        // call stack has to carry on through its vertex's neighbors where it
+        // left off. Graphs kept as flat arrays are walked by edge index, so
+        // that is one int per level; any other graph gets a cursor per
+        // level, from a pool that grows only as deep as the search goes.
+        final int[] order = new int[vertices];
+        Arrays.fill(order, -1);
+        final int[] low = new int[vertices];
+        final int[] component = new int[vertices];
+        Arrays.fill(component, -1);
+        final int[] pending = new int[vertices];
+        final int[] calls = new int[vertices];
+        final IntUnaryOperator firstEdge = links instanceof CompactGraph ? ((CompactGraph) links)::firstEdge
+            : links instanceof MappedGraph ? ((MappedGraph) links)::firstEdge
+            : null;
+        final IntUnaryOperator target = links instanceof CompactGraph ? ((CompactGraph) links)::target
+            : links instanceof MappedGraph ? ((MappedGraph) links)::target
+            : null;
+        final int[] edges = firstEdge == null ? null : new int[vertices];
+        Adjacency.Cursor[] cursors = new Adjacency.Cursor[firstEdge == null ? 64 : 0];
+        int reached = 0;
+        int waiting = 0;
+        int components = 0;
+
+        for (int root = 0; root < vertices; root++) {
+            if (order[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            for (int v = root; v >= 0; ) {
+
+                // Enter v
+                order[v] = low[v] = reached++;
+                pending[waiting++] = v;
+                calls[depth] = v;
+                if (edges != null) {
+                    edges[depth] = firstEdge.applyAsInt(v);
+                } else {
+                    if (depth == cursors.length) {
+                        cursors = Arrays.copyOf(cursors, depth * 2);
+                    }
+                    if (cursors[depth] == null) {
+                        cursors[depth] = links.cursor();
+                    }
+                    cursors[depth].reset(v);
+                }
+                depth++;
+                v = -1;
+
+                // Carry on with the deepest call that has a neighbor left to
+                // enter, finishing every call that doesn't along the way
+                while (v < 0 && depth > 0) {
+                    final int u = calls[depth - 1];
+                    final int w = edges == null ? cursors[depth - 1].next()
+                        : edges[depth - 1] < firstEdge.applyAsInt(u + 1) ? target.applyAsInt(edges[depth - 1]++)
+                        : -1;
+                    if (w < 0) {
+                        depth--;
+                        if (low[u] == order[u]) {
+                            int member;
+                            do {
+                                member = pending[--waiting];
+                                component[member] = components;
+                            } while (member != u);
+                            components++;
+                        }
+                        if (depth > 0) {
+                            final int caller = calls[depth - 1];
+                            low[caller] = Math.min(low[caller], low[u]);
+                        }
+                    } else if (order[w] < 0) {
+                        v = w;
+                    } else if (component[w] < 0) {
+                        low[u] = Math.min(low[u], order[w]);
+                    }
+                }
+            }
+        }
+
+        final int[] sizes = new int[components];
+        for (int v = 0; v < vertices; v++) {
+            sizes[component[v]]++;
+        }
+        return new ComponentIndex(component, sizes, label(condense(links, component, components)));
+    }
+
+    /* The links between different components, as a graph of components
+     */
+    private static CompactGraph condense(Adjacency links, int[] component, int components) {
+        int[] froms = new int[1024];
+        int[] tos = new int[1024];
+        int edges = 0;
+        final Adjacency.Cursor neighbors = links.cursor();
+        for (int v = 0; v < component.length; v++) {
+            neighbors.reset(v);
+            for (int w = neighbors.next(); w >= 0; w = neighbors.next()) {
+                if (component[v] != component[w]) {
+                    if (edges == froms.length) {
+                        froms = Arrays.copyOf(froms, edges * 2);
+                        tos = Arrays.copyOf(tos, edges * 2);
+                    }
+                    froms[edges] = component[v];
+                    tos[edges] = component[w];
+                    edges++;
+                }
+            }
+        }
+        return CompactGraph.freeze(components, froms, tos, edges);
+    }
+
+    /* The intervals of TRAVERSALS depth-first traversals of dag. The first
+     * visits roots and children in order, and the rest in a (seeded) random
+     * order, so that they nest differently.
+     */
+    private static int[] label(CompactGraph dag) {
+        final int components = dag.vertexCount();
+        final int[] labels = new int[components * TRAVERSALS * 2];
+        final int[] roots = new int[components];
+        final int[] shift = new int[components];
+        final int[] done = new int[components];
+        final int[] calls = new int[components];
+        final boolean[] seen = new boolean[components];
+        final Random random = new Random(components);
+
+        for (int i = 0; i < TRAVERSALS; i++) {
+            for (int c = 0; c < components; c++) {
+                roots[c] = c;
+                shift[c] = i == 0 || dag.degree(c) == 0 ? 0 : random.nextInt(dag.degree(c));
+            }
+            for (int c = components - 1; i > 0 && c > 0; c--) {
+                final int swap = random.nextInt(c + 1);
+                final int root = roots[c];
+                roots[c] = roots[swap];
+                roots[swap] = root;
+            }
+            Arrays.fill(seen, false);
+            int rank = 0;
+
+            for (int root : roots) {
+                if (seen[root]) {
+                    continue;
+                }
+                seen[root] = true;
+                done[root] = 0;
+                calls[0] = root;
+                labels[(root * TRAVERSALS + i) * 2] = Integer.MAX_VALUE;
+                int depth = 1;
+                while (depth > 0) {
+                    final int c = calls[depth - 1];
+                    final int degree = dag.degree(c);
+                    if (done[c] == degree) {
+                        // Finished: c's low is the least of its own rank and
+                        // its children's lows, which are all known by now
+                        final int at = (c * TRAVERSALS + i) * 2;
+                        labels[at + 1] = rank;
+                        labels[at] = Math.min(labels[at], rank++);
+                        depth--;
+                        if (depth > 0) {
+                            final int parent = (calls[depth - 1] * TRAVERSALS + i) * 2;
+                            labels[parent] = Math.min(labels[parent], labels[at]);
+                        }
+                        continue;
+                    }
+                    final int child = dag.target(dag.firstEdge(c) + (done[c]++ + shift[c]) % degree);
+                    if (!seen[child]) {
+                        seen[child] = true;
+                        done[child] = 0;
+                        labels[(child * TRAVERSALS + i) * 2] = Integer.MAX_VALUE;
+                        calls[depth++] = child;
+                    } else {
+                        // Already finished (there are no cycles to be in the
+                        // middle of), so its low is final
+                        final int at = (c * TRAVERSALS + i) * 2;
+                        labels[at] = Math.min(labels[at], labels[(child * TRAVERSALS + i) * 2]);
+                    }
+                }
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * @param s a vertex (or a negative number, for none)
+     * @param t a vertex (or a negative number, for none)
+     * @return false if there is certainly no path from s to t. true if there
+     *      may be one (and certainly is one if they share a component). Vertices
+     *      added to the graph since the index was built may reach anything.
+     */
+    boolean mayReach(int s, int t) {
+        if (s < 0 || t < 0) {
+            return false;
+        }
+        if (s >= component.length || t >= component.length) {
+            return true;
+        }
+        final int c = component[s];
+        final int d = component[t];
+        if (c == d) {
+            return true;
+        }
+        if (d > c) {
+            return false;
+        }
+        for (int i = 0; i < TRAVERSALS; i++) {
+            final int from = (c * TRAVERSALS + i) * 2;
+            final int to = (d * TRAVERSALS + i) * 2;
+            if (labels[to] < labels[from] || labels[to + 1] > labels[from + 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param v a vertex
+     * @return the id of v's component
+     */
+    int component(int v) {
+        return component[v];
+    }
+
+    /**
+     * @return the number of vertices the index was built for
+     */
+    int vertexCount() {
+        return component.length;
+    }
+
+    /**
+     * @param c a component id
+     * @return the number of vertices in component c
+     */
+    int size(int c) {
+        return sizes[c];
+    }
+
+    /**
+     * @return the number of components
+     */
+    int count() {
+        return sizes.length;
+    }
+}
@@ -0,0 +1,577 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+
+/**
+ * A frozen graph with its neighbor lists compressed, for graphs whose links
+ * don't fit in memory as plain int arrays.
+ *
+ * Each neighbor list is sorted, so it can be stored as the gaps between
+ * consecutive neighbors, which are mostly small, and each gap takes as many
+ * bytes as it needs (a varint: 7 bits per byte, with the top bit set on
+ * every byte but the last). The first neighbor is stored relative to the
+ * vertex itself (zigzagged, since it may be below it), which is also small
+ * once articles that link to each other have nearby ids (see VertexOrder).
+ *
+ * As in WebGraph (Boldi and Vigna, "The WebGraph Framework I: Compression
+ * Techniques"), a list can also be stored as a copy of parts of a recent
+ * list (one of the WINDOW vertices before it), plus whatever extra
+ * neighbors it has: which of the reference's neighbors are copied is a
+ * series of alternating copy and skip run lengths. Neighboring articles
+ * often share most of their links (all the articles in a series link to
+ * each other and to the same few hubs), and those are then stored once.
+ * Each list is stored whichever way is shortest, but a reference can only
+ * be CHAIN deep (a copy of a copy of a copy), which bounds decoding work.
+ *
+ * The layout of v's list, starting at offsets[v]:
+ *
+ *      varint  degree
+ *      varint  how many vertices back the reference is, or 0 for none
+ *              (only if the graph uses references)
+ *      if there is a reference:
+ *          varint  how many neighbors are extra, not copied
+ *          varint  how many runs there are
+ *          varint  how many bytes the runs take up
+ *          varints the runs: copy, skip, copy, ... (all but the first run are
+ *                  stored minus 1, since only the first can be empty). The
+ *                  reference's neighbors after the last run are skipped.
+ *      varints the extra neighbors: the first zigzagged relative to v, the
+ *              rest minus the previous one minus 1
+ *
+ * Lists are packed back to back into pages of up to 1GB (no list crosses
+ * from one page to the next), and offsets is a long per vertex, so the
+ * graph can take up more than an array can hold. Cursors decode lists as
+ * they go, merging copied and extra neighbors, and allocate nothing after
+ * they are made.
+ *
+ * The pages and offsets are buffers: wrapped heap arrays for a graph
+ * compressed here, or read-only maps of a GraphSnapshot file for one that
+ * was saved compressed, so that opening it never builds the int arrays at
+ * all.
+ */
+public final class CompressedGraph implements Adjacency {
+
+    /* How many vertices back a reference may be, and how deep a chain of
+     * references may go. WebGraph's defaults.
+     */
+    static final int WINDOW = 7;
+    static final int CHAIN = 3;
+
+    private static final int PAGE_BITS = 30;
+    private static final int PAGE = 1 << PAGE_BITS;
+
+    private final ByteBuffer[] pages;
+
+    /* Where each vertex's list starts: its page, shifted left by PAGE_BITS,
+     * plus where in the page. One more, at the end, is where the last list
+     * ends.
+     */
+    private final LongBuffer offsets;
+
+    private final long edges;
+
+    /* How many lists back a reference could be when the graph was
+     * compressed, or 0 if it doesn't use references
+     */
+    private final int window;
+
+    CompressedGraph(ByteBuffer[] pages, LongBuffer offsets, long edges, int window) {
+        this.pages = pages;
+        this.offsets = offsets;
+        this.edges = edges;
+        this.window = window;
+    }
+
+    /**
+     * Compresses a graph.
+     * @param graph the graph
+     * @param window how many lists back to look for a reference, or 0 to store
+     *      every list on its own
+     * @return the compressed graph
+     */
+    static CompressedGraph compress(Adjacency graph, int window) {
+        final int vertices = graph.vertexCount();
+        final long[] offsets = new long[vertices];
+        final Writer out = new Writer();
+        final Encoder encoder = new Encoder();
+        final Writer scratch = new Writer();
+        final Writer best = new Writer();
+        final Cursor neighbors = graph.cursor();
+
+        // The last window + 1 lists (v's own is lists[v % (window + 1)]), and
+        // how deep each vertex's chain of references is
+        final int[][] lists = new int[window + 1][16];
+        final int[] lengths = new int[window + 1];
+        final byte[] depth = new byte[vertices];
+
+        for (int v = 0; v < vertices; v++) {
+            final int slot = v % (window + 1);
+            neighbors.reset(v);
+            int degree = 0;
+            for (int w = neighbors.next(); w >= 0; w = neighbors.next()) {
+                if (degree == lists[slot].length) {
+                    lists[slot] = Arrays.copyOf(lists[slot], degree * 2);
+                }
+                lists[slot][degree++] = w;
+            }
+            lengths[slot] = degree;
+
+            best.clear();
+            encoder.encode(best, v, lists[slot], degree, window > 0, 0, null, 0);
+            for (int back = 1; back <= Math.min(window, v) && degree > 0; back++) {
+                final int reference = (v - back) % (window + 1);
+                if (depth[v - back] < CHAIN && lengths[reference] > 0) {
+                    scratch.clear();
+                    encoder.encode(scratch, v, lists[slot], degree, true, back, lists[reference], lengths[reference]);
+                    if (scratch.size < best.size) {
+                        best.copy(scratch);
+                        depth[v] = (byte) (depth[v - back] + 1);
+                    }
+                }
+            }
+            offsets[v] = out.append(best);
+        }
+        final long[] starts = Arrays.copyOf(offsets, vertices + 1);
+        starts[vertices] = out.end();
+        return new CompressedGraph(Arrays.stream(out.pages()).map(ByteBuffer::wrap).toArray(ByteBuffer[]::new),
+            LongBuffer.wrap(starts), graph.edgeCount(), window);
+    }
+
+    /* Encodes lists, reusing its buffers from one to the next
+     */
+    private static final class Encoder {
+
+        private int[] extra = new int[16];
+        private final Writer runs = new Writer();
+
+        /* Writes v's list, as a copy of reference's (the list back vertices
+         * before it) if back isn't 0
+         */
+        void encode(Writer out, int v, int[] list, int degree, boolean references,
+                int back, int[] reference, int referenceDegree) {
+            out.putVarint(degree);
+            if (degree == 0) {
+                return;
+            }
+            if (references) {
+                out.putVarint(back);
+            }
+            if (back == 0) {
+                putExtras(out, v, list, degree);
+                return;
+            }
+
+            // Walk both sorted lists together, marking which of the
+            // reference's neighbors are copied, and which of v's are extra
+            if (extra.length < degree) {
+                extra = new int[Math.max(degree, 2 * extra.length)];
+            }
+            runs.clear();
+            int extras = 0;
+            int count = 0;
+            int run = 0;
+            boolean copying = true;
+            int i = 0;
+            for (int j = 0; j < referenceDegree; j++) {
+                while (i < degree && list[i] < reference[j]) {
+                    extra[extras++] = list[i++];
+                }
+                final boolean copy = i < degree && list[i] == reference[j];
+                if (copy) {
+                    i++;
+                }
+                if (copy != copying) {
+                    runs.putVarint(count++ == 0 ? run : run - 1);
+                    copying = copy;
+                    run = 0;
+                }
+                run++;
+            }
+            while (i < degree) {
+                extra[extras++] = list[i++];
+            }
+            if (copying) {
+                runs.putVarint(count++ == 0 ? run : run - 1);
+            }
+            out.putVarint(extras);
+            out.putVarint(count);
+            out.putVarint(runs.size);
+            out.copyAppend(runs);
+            putExtras(out, v, extra, extras);
+        }
+
+        private static void putExtras(Writer out, int v, int[] extra, int extras) {
+            for (int i = 0; i < extras; i++) {
+                out.putVarint(i == 0 ? zigzag(extra[0] - v) : extra[i] - extra[i - 1] - 1);
+            }
+        }
+    }
+
+    private static int zigzag(int x) {
+        return (x << 1) ^ (x >> 31);
+    }
+
+    private static int unzigzag(int x) {
+        return (x >>> 1) ^ -(x & 1);
+    }
+
+    @Override
+    public int vertexCount() {
+        return offsets.limit() - 1;
+    }
+
+    @Override
+    public long edgeCount() {
+        return edges;
+    }
+
+    @Override
+    public int degree(int v) {
+        final ByteBuffer page = pages[(int) (offsets.get(v) >>> PAGE_BITS)];
+        int at = (int) offsets.get(v) & (PAGE - 1);
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = page.get(at++);
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Passes each neighbor of v, in increasing order, to action. This makes a
+     * cursor for every call; searches should keep one of their own (see
+     * cursor()).
+     */
+    @Override
+    public void forEachNeighbor(int v, IntConsumer action) {
+        final Cursor neighbors = cursor();
+        neighbors.reset(v);
+        for (int w = neighbors.next(); w >= 0; w = neighbors.next()) {
+            action.accept(w);
+        }
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Decoder(window > 0 ? CHAIN : 0);
+    }
+
+    /**
+     * @return how many lists back a reference could be when this graph was
+     *      compressed (so what to compress it with again), or 0 for none
+     */
+    int window() {
+        return window;
+    }
+
+    /**
+     * For writing the graph out (see GraphSnapshot).
+     * @return how many pages the lists are packed into
+     */
+    int pageCount() {
+        return pages.length;
+    }
+
+    /**
+     * @param i a page, from 0 to pageCount() - 1
+     * @return its bytes, from position 0 to the limit
+     */
+    ByteBuffer page(int i) {
+        return pages[i].duplicate();
+    }
+
+    /**
+     * @param v a vertex, or vertexCount() for the end of the last list
+     * @return where its list starts: its page, shifted left by PAGE_BITS, plus
+     *      where in the page
+     */
+    long offset(int v) {
+        return offsets.get(v);
+    }
+
+    /**
+     * @return how many bytes the neighbor lists take up (on the heap, unless
+     *      they are mapped from a snapshot)
+     */
+    public long listBytes() {
+        long bytes = 16L;
+        for (ByteBuffer page : pages) {
+            bytes += 16 + page.limit();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return how many bytes the offsets take up (likewise)
+     */
+    public long offsetBytes() {
+        return 16L + 8L * offsets.limit();
+    }
+
+    /**
+     * @return the whole graph's heap, in bits per edge
+     */
+    public double bitsPerEdge() {
+        return 8.0 * (listBytes() + offsetBytes()) / Math.max(1, edges);
+    }
+
+    /**
+     * Compresses the links of a vertex and edge file (and the backlinks) with and
+     * without references, and prints what each costs per edge next to plain int
+     * arrays (CompactGraph), and how long a scan of every list takes. Each scan
+     * also prints the sum of every neighbor it read, which is the same for all
+     * three when the lists decode right.
+     * @param args the vertex file, the edge file, and optionally how to number the
+     *      vertices first (see VertexOrdering)
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 3) {
+            System.out.println("Usage: CompressedGraph <vertex file> <edge file> [ordering]");
+            return;
+        }
+        final GraphLoader loaded = GraphLoader.load(args[0], args[1]);
+        final VertexOrder order = VertexOrder.choose(
+            args.length == 3 ? VertexOrdering.valueOf(args[2]) : VertexOrdering.FILE,
+            loaded.links, loaded.backlinks);
+        final CompactGraph[] graphs = { order.renumber(loaded.links), order.renumber(loaded.backlinks) };
+        final String[] names = { "links", "backlinks" };
+        for (int i = 0; i < graphs.length; i++) {
+            final CompactGraph plain = graphs[i];
+            final long edges = Math.max(1, plain.edgeCount());
+            System.out.println(String.format(Locale.ROOT,
+                "%s: %d vertices, %d edges%n  int arrays:  %6.2f bits/edge, %s",
+                names[i], plain.vertexCount(), plain.edgeCount(),
+                32.0 * (plain.edgeCount() + plain.vertexCount() + 1) / edges, scan(plain)));
+            for (int window : new int[] { 0, WINDOW }) {
+                final CompressedGraph compressed = compress(plain, window);
+                System.out.println(String.format(Locale.ROOT,
+                    "  %-11s  %6.2f bits/edge (%.2f lists + %.2f offsets), %s",
+                    window == 0 ? "gaps:" : "references:", compressed.bitsPerEdge(),
+                    8.0 * compressed.listBytes() / edges, 8.0 * compressed.offsetBytes() / edges,
+                    scan(compressed)));
+            }
+        }
+    }
+
+    /* Milliseconds to read every neighbor list once, the best of a few times,
+     * and the sum of the neighbors read (which also keeps the reads from
+     * being optimized away)
+     */
+    private static String scan(Adjacency graph) {
+        final Cursor neighbors = graph.cursor();
+        long best = Long.MAX_VALUE;
+        long sum = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            final long started = System.nanoTime();
+            sum = 0;
+            for (int v = 0; v < graph.vertexCount(); v++) {
+                neighbors.reset(v);
+                for (int w = neighbors.next(); w >= 0; w = neighbors.next()) {
+                    sum += w;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - started);
+        }
+        return String.format(Locale.ROOT, "scan %d ms (sum %d)", best / 1000000, sum);
+    }
+
+    /* Reads one list. A list copied from a reference reads the reference's
+     * list with a decoder of its own (one level deeper), so each cursor
+     * holds a chain of CHAIN + 1 of them, made up front.
+     */
+    private final class Decoder implements Cursor {
+
+        private final Decoder reference;
+
+        private ByteBuffer page;
+        private int at;
+        private int vertex;
+
+        /* Extra neighbors left to read, and the last one read. 'extra' is the
+         * next one to return if haveExtra.
+         */
+        private int extras;
+        private int extra;
+        private boolean haveExtra;
+        private boolean first;
+
+        /* Copying from the reference: where the runs are, how many are left,
+         * how much of the current one is left, and whether it is copied.
+         * 'copied' is the next copied neighbor to return if haveCopied.
+         */
+        private boolean copyingList;
+        private int runsAt;
+        private int runs;
+        private int run;
+        private boolean firstRun;
+        private boolean copying;
+        private int copied;
+        private boolean haveCopied;
+
+        Decoder(int depth) {
+            this.reference = depth > 0 ? new Decoder(depth - 1) : null;
+        }
+
+        @Override
+        public void reset(int v) {
+            page = pages[(int) (offsets.get(v) >>> PAGE_BITS)];
+            at = (int) offsets.get(v) & (PAGE - 1);
+            vertex = v;
+            haveExtra = false;
+            haveCopied = false;
+            first = true;
+            copyingList = false;
+
+            extras = readVarint();
+            final int back = window > 0 && extras > 0 ? readVarint() : 0;
+            if (back > 0) {
+                extras = readVarint();
+                runs = readVarint();
+                final int runBytes = readVarint();
+                runsAt = at;
+                at += runBytes;
+                run = 0;
+                firstRun = true;
+                copying = false;
+                copyingList = true;
+                reference.reset(v - back);
+            }
+        }
+
+        @Override
+        public int next() {
+            if (!haveCopied && copyingList) {
+                haveCopied = nextCopied();
+            }
+            if (!haveExtra && extras > 0) {
+                final int gap = readVarint();
+                extra = first ? vertex + unzigzag(gap) : extra + 1 + gap;
+                first = false;
+                extras--;
+                haveExtra = true;
+            }
+            if (haveCopied && (!haveExtra || copied < extra)) {
+                haveCopied = false;
+                return copied;
+            }
+            if (haveExtra) {
+                haveExtra = false;
+                return extra;
+            }
+            return -1;
+        }
+
+        /* Moves 'copied' to the reference's next copied neighbor, if there is one
+         */
+        private boolean nextCopied() {
+            while (true) {
+                while (run == 0) {
+                    if (runs == 0) {
+                        copyingList = false;
+                        return false;
+                    }
+                    final int resume = at;
+                    at = runsAt;
+                    run = readVarint() + (firstRun ? 0 : 1);
+                    runsAt = at;
+                    at = resume;
+                    firstRun = false;
+                    runs--;
+                    copying = !copying;
+                }
+                final int w = reference.next();
+                if (w < 0) {
+                    copyingList = false;
+                    return false;
+                }
+                run--;
+                if (copying) {
+                    copied = w;
+                    return true;
+                }
+            }
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                final byte b = page.get(at++);
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    /* An append-only byte sink in pages, and a scratch buffer for encoding
+     * one list
+     */
+    private static final class Writer {
+
+        private byte[][] full = new byte[0][];
+        private byte[] bytes = new byte[64];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void putVarint(int value) {
+            room(5);
+            int x = value;
+            while ((x & ~0x7f) != 0) {
+                bytes[size++] = (byte) ((x & 0x7f) | 0x80);
+                x >>>= 7;
+            }
+            bytes[size++] = (byte) x;
+        }
+
+        void copy(Writer other) {
+            size = 0;
+            copyAppend(other);
+        }
+
+        void copyAppend(Writer other) {
+            room(other.size);
+            System.arraycopy(other.bytes, 0, bytes, size, other.size);
+            size += other.size;
+        }
+
+        /* Appends a whole list, starting a new page if it doesn't fit on this
+         * one. Returns where it starts.
+         */
+        long append(Writer list) {
+            if ((long) size + list.size > PAGE) {
+                full = Arrays.copyOf(full, full.length + 1);
+                full[full.length - 1] = Arrays.copyOf(bytes, size);
+                bytes = new byte[64];
+                size = 0;
+            }
+            final long start = (long) full.length << PAGE_BITS | size;
+            copyAppend(list);
+            return start;
+        }
+
+        long end() {
+            return (long) full.length << PAGE_BITS | size;
+        }
+
+        byte[][] pages() {
+            final byte[][] pages = Arrays.copyOf(full, full.length + 1);
+            pages[full.length] = Arrays.copyOf(bytes, size);
+            return pages;
+        }
+
+        private void room(int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(PAGE, Math.max(size + length, 2L * bytes.length)));
+            }
+        }
+    }
+}
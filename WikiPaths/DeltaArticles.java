@@ -0,0 +1,182 @@
+import java.util.Arrays;
+
+/**
+ * An immutable ArticleIndex made of a frozen base (an ArticleDictionary or
+ * MappedArticles) and the articles added since, which are numbered after the
+ * base's. Like DeltaGraph, every addition returns a new index and leaves this
+ * one as it was, and the additions are meant to be merged into the base by
+ * compact() once there are a few thousand of them.
+ *
+ * The additions are kept in buckets the way DeltaGraph keeps its overlay:
+ * each addition copies the arrays of buckets and the buckets it changes,
+ * and shares the rest, and there are about as many buckets as there are
+ * added articles in each, so n additions cost about n * sqrt(n) rather
+ * than n * n. There are two sets of buckets over the same added articles:
+ * one by name, to look up ids, and one by id, to look up names.
+ */
+final class DeltaArticles implements ArticleIndex {
+
+    private static final String[] NO_NAMES = new String[0];
+    private static final int[] NO_IDS = new int[0];
+
+    /* The fewest buckets there are
+     */
+    private static final int BUCKETS = 16;
+
+    private final ArticleIndex base;
+    private final int added;
+
+    /* By name: bucket b holds the names names[b], in increasing order, and
+     * ids[b][i] is the id of names[b][i]. A name goes in bucket
+     * DeltaGraph.mix(its hash code) & (names.length - 1).
+     */
+    private final String[][] names;
+    private final int[][] ids;
+
+    /* By id: the i'th article added (counting from 0) is
+     * byId[i & (byId.length - 1)][i / byId.length]. There are as many
+     * buckets as there are by name, a power of two.
+     */
+    private final String[][] byId;
+
+    private DeltaArticles(ArticleIndex base, int added, String[][] names, int[][] ids, String[][] byId) {
+        this.base = base;
+        this.added = added;
+        this.names = names;
+        this.ids = ids;
+        this.byId = byId;
+    }
+
+    /**
+     * @param articles an index
+     * @return articles itself if it is already a DeltaArticles, or else articles
+     *      with nothing added
+     */
+    static DeltaArticles over(ArticleIndex articles) {
+        if (articles instanceof DeltaArticles) {
+            return (DeltaArticles) articles;
+        }
+        final String[][] names = new String[BUCKETS][];
+        final int[][] ids = new int[BUCKETS][];
+        final String[][] byId = new String[BUCKETS][];
+        Arrays.fill(names, NO_NAMES);
+        Arrays.fill(ids, NO_IDS);
+        Arrays.fill(byId, NO_NAMES);
+        return new DeltaArticles(articles, 0, names, ids, byId);
+    }
+
+    @Override
+    public int size() {
+        return base.size() + added;
+    }
+
+    @Override
+    public int id(String article) {
+        if (added > 0) {
+            final int bucket = bucket(article, names.length);
+            final int at = Arrays.binarySearch(names[bucket], article);
+            if (at >= 0) {
+                return ids[bucket][at];
+            }
+        }
+        return base.id(article);
+    }
+
+    @Override
+    public String name(int id) {
+        final int i = id - base.size();
+        return i < 0 ? base.name(id) : byId[i & (byId.length - 1)][i / byId.length];
+    }
+
+    /**
+     * @param article a name that is not in this index
+     * @return this index with article added, as id size()
+     */
+    DeltaArticles with(String article) {
+        final int bucket = bucket(article, names.length);
+        final int insert = -Arrays.binarySearch(names[bucket], article) - 1;
+        final String[][] newNames = names.clone();
+        final int[][] newIds = ids.clone();
+        newNames[bucket] = new String[names[bucket].length + 1];
+        newIds[bucket] = new int[names[bucket].length + 1];
+        System.arraycopy(names[bucket], 0, newNames[bucket], 0, insert);
+        System.arraycopy(ids[bucket], 0, newIds[bucket], 0, insert);
+        newNames[bucket][insert] = article;
+        newIds[bucket][insert] = size();
+        System.arraycopy(names[bucket], insert, newNames[bucket], insert + 1, names[bucket].length - insert);
+        System.arraycopy(ids[bucket], insert, newIds[bucket], insert + 1, names[bucket].length - insert);
+
+        final String[][] newById = byId.clone();
+        final int slot = added & (byId.length - 1);
+        newById[slot] = Arrays.copyOf(byId[slot], byId[slot].length + 1);
+        newById[slot][byId[slot].length] = article;
+
+        // Buckets hold a quarter as many articles as there are buckets, on
+        // average, before there are twice as many buckets
+        final int count = added + 1;
+        return (long) count * 4 > (long) names.length * names.length
+            ? new DeltaArticles(base, count, newNames, newIds, newById).split()
+            : new DeltaArticles(base, count, newNames, newIds, newById);
+    }
+
+    /* This index, with twice as many buckets. Each bucket by name splits in
+     * two, keeping its order, and the buckets by id are dealt out again.
+     */
+    private DeltaArticles split() {
+        final int buckets = names.length * 2;
+        final String[][] splitNames = new String[buckets][];
+        final int[][] splitIds = new int[buckets][];
+        for (int b = 0; b < names.length; b++) {
+            int high = 0;
+            for (String name : names[b]) {
+                high += bucket(name, buckets) != b ? 1 : 0;
+            }
+            final int low = names[b].length - high;
+            splitNames[b] = new String[low];
+            splitIds[b] = new int[low];
+            splitNames[b + names.length] = new String[high];
+            splitIds[b + names.length] = new int[high];
+            int l = 0;
+            int h = 0;
+            for (int i = 0; i < names[b].length; i++) {
+                final boolean upper = bucket(names[b][i], buckets) != b;
+                final int to = upper ? b + names.length : b;
+                final int at = upper ? h++ : l++;
+                splitNames[to][at] = names[b][i];
+                splitIds[to][at] = ids[b][i];
+            }
+        }
+
+        final String[][] splitById = new String[buckets][];
+        for (int b = 0; b < buckets; b++) {
+            splitById[b] = new String[(added - b + buckets - 1) / buckets];
+        }
+        for (int i = 0; i < added; i++) {
+            splitById[i & (buckets - 1)][i / buckets] = name(base.size() + i);
+        }
+        return new DeltaArticles(base, added, splitNames, splitIds, splitById);
+    }
+
+    private static int bucket(String article, int buckets) {
+        return DeltaGraph.mix(article.hashCode()) & (buckets - 1);
+    }
+
+    /**
+     * @return how many articles have been added to the base
+     */
+    int added() {
+        return added;
+    }
+
+    /**
+     * Merges the additions into the base.
+     * @return an ArticleDictionary with the same articles as this index
+     */
+    ArticleDictionary compact() {
+        final ArticleDictionary.Builder bob = new ArticleDictionary.Builder();
+        for (int id = 0; id < size(); id++) {
+            bob.add(name(id));
+        }
+        return bob.build();
+    }
+}
@@ -0,0 +1,302 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable graph made of a frozen base graph (a CompactGraph,
+ * CompressedGraph or MappedGraph) and a small overlay of changes to it. Every change returns a
+ * new DeltaGraph and leaves this one as it was, so a search that holds on to
+ * one never sees the graph change under it, and nothing needs to be locked.
+ *
+ * The overlay replaces whole neighbor lists: each vertex whose links have
+ * changed has its complete, sorted neighbor list in a hash table, and every
+ * other vertex reads straight from the base. New vertices are numbered after
+ * the base's, and have no neighbors until some are added.
+ *
+ * The table is split into buckets, each a small array sorted by vertex, and
+ * a change copies only the array of buckets and the one bucket it changes.
+ * The number of buckets grows with the square root of the number of
+ * overlaid vertices, so both of those stay about that size, and a run of n
+ * changes costs about n * sqrt(n) rather than n * n. Even so, the overlay is
+ * meant to be merged back into a plain CompactGraph (compact()) once it has
+ * grown past a few thousand vertices, since every search pays a lookup in it
+ * for every vertex it expands.
+ */
+final class DeltaGraph implements Adjacency {
+
+    private static final int[] NONE = new int[0];
+    private static final int[][] NO_LISTS = new int[0][];
+
+    /* The fewest buckets the overlay has
+     */
+    private static final int BUCKETS = 16;
+
+    private final Adjacency base;
+    private final int vertices;
+    private final long edges;
+
+    /* The overlay: bucket b holds the vertices keys[b], in increasing order,
+     * and lists[b][i] is the neighbor list of keys[b][i]. Vertex v goes in
+     * bucket mix(v) & (keys.length - 1), and the number of buckets is a power
+     * of two. Buckets are never changed once made, so versions share them.
+     */
+    private final int[][] keys;
+    private final int[][][] lists;
+    private final int overlaid;
+
+    private DeltaGraph(Adjacency base, int vertices, long edges, int[][] keys, int[][][] lists, int overlaid) {
+        this.base = base;
+        this.vertices = vertices;
+        this.edges = edges;
+        this.keys = keys;
+        this.lists = lists;
+        this.overlaid = overlaid;
+    }
+
+    /**
+     * @param graph a graph
+     * @return graph itself if it is already a DeltaGraph, or else graph with an
+     *      empty overlay
+     */
+    static DeltaGraph over(Adjacency graph) {
+        if (graph instanceof DeltaGraph) {
+            return (DeltaGraph) graph;
+        }
+        final int[][] keys = new int[BUCKETS][];
+        final int[][][] lists = new int[BUCKETS][][];
+        Arrays.fill(keys, NONE);
+        Arrays.fill(lists, NO_LISTS);
+        return new DeltaGraph(graph, graph.vertexCount(), graph.edgeCount(), keys, lists, 0);
+    }
+
+    @Override
+    public int vertexCount() {
+        return vertices;
+    }
+
+    @Override
+    public long edgeCount() {
+        return edges;
+    }
+
+    @Override
+    public int degree(int v) {
+        final int[] list = overlay(v);
+        return list != null ? list.length : v < base.vertexCount() ? base.degree(v) : 0;
+    }
+
+    @Override
+    public void forEachNeighbor(int v, IntConsumer action) {
+        final int[] list = overlay(v);
+        if (list != null) {
+            for (int w : list) {
+                action.accept(w);
+            }
+        } else if (v < base.vertexCount()) {
+            base.forEachNeighbor(v, action);
+        }
+    }
+
+    @Override
+    public Cursor cursor() {
+        final Cursor inner = base.cursor();
+        return new Cursor() {
+            // The overlaid list being walked, or null to walk inner
+            private int[] list;
+            private int next;
+
+            @Override
+            public void reset(int v) {
+                list = overlay(v);
+                next = 0;
+                if (list == null) {
+                    if (v < base.vertexCount()) {
+                        inner.reset(v);
+                    } else {
+                        list = NONE;
+                    }
+                }
+            }
+
+            @Override
+            public int next() {
+                return list == null ? inner.next() : next < list.length ? list[next++] : -1;
+            }
+        };
+    }
+
+    /**
+     * @return this graph with one more vertex, which has no links
+     */
+    DeltaGraph withVertex() {
+        return new DeltaGraph(base, vertices + 1, edges, keys, lists, overlaid);
+    }
+
+    /**
+     * @param from a vertex
+     * @param to a vertex
+     * @return this graph with an edge from from to to, or this graph itself if it
+     *      already has that edge
+     */
+    DeltaGraph withEdge(int from, int to) {
+        final int[] list = neighbors(from);
+        final int at = Arrays.binarySearch(list, to);
+        if (at >= 0) {
+            return this;
+        }
+        final int[] added = new int[list.length + 1];
+        System.arraycopy(list, 0, added, 0, -at - 1);
+        added[-at - 1] = to;
+        System.arraycopy(list, -at - 1, added, -at, list.length + at + 1);
+        return with(from, added, edges + 1);
+    }
+
+    /**
+     * @param from a vertex
+     * @param to a vertex
+     * @return this graph without the edge from from to to, or this graph itself
+     *      if it has no such edge
+     */
+    DeltaGraph withoutEdge(int from, int to) {
+        final int[] list = neighbors(from);
+        final int at = Arrays.binarySearch(list, to);
+        if (at < 0) {
+            return this;
+        }
+        final int[] removed = new int[list.length - 1];
+        System.arraycopy(list, 0, removed, 0, at);
+        System.arraycopy(list, at + 1, removed, at, list.length - at - 1);
+        return with(from, removed, edges - 1);
+    }
+
+    /**
+     * @return the frozen graph underneath the overlay
+     */
+    Adjacency base() {
+        return base;
+    }
+
+    /**
+     * @return how many vertices have overlaid neighbor lists
+     */
+    int overlaid() {
+        return overlaid;
+    }
+
+    /**
+     * Merges the overlay into the base.
+     * @return a CompactGraph with the same vertices and edges as this graph
+     */
+    CompactGraph compact() {
+        final int[] offsets = new int[vertices + 1];
+        for (int v = 0; v < vertices; v++) {
+            offsets[v + 1] = Math.addExact(offsets[v], degree(v));
+        }
+        final int[] targets = new int[offsets[vertices]];
+        final Cursor neighbors = cursor();
+        for (int v = 0; v < vertices; v++) {
+            neighbors.reset(v);
+            int i = offsets[v];
+            for (int w = neighbors.next(); w >= 0; w = neighbors.next()) {
+                targets[i++] = w;
+            }
+        }
+        return new CompactGraph(offsets, targets);
+    }
+
+    /* v's overlaid neighbor list, or null if it has none
+     */
+    private int[] overlay(int v) {
+        if (overlaid == 0) {
+            return null;
+        }
+        final int bucket = mix(v) & (keys.length - 1);
+        final int at = Arrays.binarySearch(keys[bucket], v);
+        return at >= 0 ? lists[bucket][at] : null;
+    }
+
+    /* v's neighbors, as a sorted array
+     */
+    private int[] neighbors(int v) {
+        final int[] list = overlay(v);
+        if (list != null) {
+            return list;
+        }
+        final int[] copy = new int[degree(v)];
+        final int[] i = { 0 };
+        forEachNeighbor(v, w -> copy[i[0]++] = w);
+        return copy;
+    }
+
+    /* A copy of this graph, with v's neighbors overlaid by list. Copies the
+     * array of buckets and v's bucket, and shares the rest.
+     */
+    private DeltaGraph with(int v, int[] list, long edges) {
+        final int[][] newKeys = keys.clone();
+        final int[][][] newLists = lists.clone();
+        final int bucket = mix(v) & (keys.length - 1);
+        final int at = Arrays.binarySearch(keys[bucket], v);
+        if (at >= 0) {
+            newLists[bucket] = lists[bucket].clone();
+            newLists[bucket][at] = list;
+            return new DeltaGraph(base, vertices, edges, newKeys, newLists, overlaid);
+        }
+
+        final int[] bucketKeys = keys[bucket];
+        final int[][] bucketLists = lists[bucket];
+        final int insert = -at - 1;
+        newKeys[bucket] = new int[bucketKeys.length + 1];
+        newLists[bucket] = new int[bucketKeys.length + 1][];
+        System.arraycopy(bucketKeys, 0, newKeys[bucket], 0, insert);
+        System.arraycopy(bucketLists, 0, newLists[bucket], 0, insert);
+        newKeys[bucket][insert] = v;
+        newLists[bucket][insert] = list;
+        System.arraycopy(bucketKeys, insert, newKeys[bucket], insert + 1, bucketKeys.length - insert);
+        System.arraycopy(bucketLists, insert, newLists[bucket], insert + 1, bucketKeys.length - insert);
+
+        // Buckets hold a quarter as many vertices as there are buckets, on
+        // average, before there are twice as many buckets
+        final int count = overlaid + 1;
+        return (long) count * 4 > (long) keys.length * keys.length
+            ? split(newKeys, newLists, edges, count)
+            : new DeltaGraph(base, vertices, edges, newKeys, newLists, count);
+    }
+
+    /* A copy of this graph with the overlay keys and lists, in twice as many
+     * buckets. Bucket b splits into b and b + keys.length, and each half
+     * keeps its order.
+     */
+    private DeltaGraph split(int[][] keys, int[][][] lists, long edges, int count) {
+        final int buckets = keys.length * 2;
+        final int[][] splitKeys = new int[buckets][];
+        final int[][][] splitLists = new int[buckets][][];
+        for (int b = 0; b < keys.length; b++) {
+            int high = 0;
+            for (int v : keys[b]) {
+                high += (mix(v) & keys.length) != 0 ? 1 : 0;
+            }
+            final int low = keys[b].length - high;
+            splitKeys[b] = low == 0 ? NONE : new int[low];
+            splitLists[b] = low == 0 ? NO_LISTS : new int[low][];
+            splitKeys[b + keys.length] = high == 0 ? NONE : new int[high];
+            splitLists[b + keys.length] = high == 0 ? NO_LISTS : new int[high][];
+            int l = 0;
+            int h = 0;
+            for (int i = 0; i < keys[b].length; i++) {
+                final boolean upper = (mix(keys[b][i]) & keys.length) != 0;
+                final int to = upper ? b + keys.length : b;
+                final int at = upper ? h++ : l++;
+                splitKeys[to][at] = keys[b][i];
+                splitLists[to][at] = lists[b][i];
+            }
+        }
+        return new DeltaGraph(base, vertices, edges, splitKeys, splitLists, count);
+    }
+
+    /* Spreads v's bits over the low ones, which pick its bucket. Also used
+     * by DeltaArticles.
+     */
+    static int mix(int v) {
+        final int hash = v * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * How far apart articles are, as seen from a sample of them: for every
+ * source article, the length of the shortest path to every other article.
+ * (See PathFinder.getDistanceProfile(), and MultiSourceSearch for how those
+ * are found.)
+ *
+ * From those come the distribution of distances, each source's eccentricity
+ * (the length of the longest shortest path out of it), and bounds on the
+ * diameter. The graph as a whole has pairs with no path between them, so its
+ * diameter is taken to be the longest shortest path there is; every sampled
+ * eccentricity is a lower bound on it. Within the largest strongly connected
+ * component (the "core", where every article reaches every other), any
+ * source s also gives an upper bound: every path can go through s, so no
+ * two articles of the core are further apart than the longest path into s
+ * plus the longest path out of it.
+ */
+public final class DistanceProfile {
+
+    private final List<String> sources;
+    private final int articles;
+
+    /* histogram[d] is the number of (source, article) pairs d links apart
+     */
+    private final long[] histogram;
+
+    /* For each source, in order: its eccentricity, and the longest path out
+     * of it into the core and into it from the core (or -1 for sources
+     * outside the core)
+     */
+    private final int[] eccentricity;
+    private final int[] coreOut;
+    private final int[] coreIn;
+
+    private final int coreSize;
+
+    DistanceProfile(List<String> sources, int articles, long[] histogram, int[] eccentricity,
+            int[] coreOut, int[] coreIn, int coreSize) {
+        this.sources = Collections.unmodifiableList(sources);
+        this.articles = articles;
+        this.histogram = histogram;
+        this.eccentricity = eccentricity;
+        this.coreOut = coreOut;
+        this.coreIn = coreIn;
+        this.coreSize = coreSize;
+    }
+
+    /**
+     * @return the names of the articles searched from, in order
+     */
+    public List<String> sources() {
+        return sources;
+    }
+
+    /**
+     * @return for each distance d (from 0 up to the largest there is), the
+     *      number of (source, article) pairs that are d links apart. The
+     *      count at 0 is the number of sources.
+     */
+    public long[] histogram() {
+        return histogram.clone();
+    }
+
+    /**
+     * @return the number of (source, other article) pairs with a path
+     *      between them
+     */
+    public long reachablePairs() {
+        return Arrays.stream(histogram).skip(1).sum();
+    }
+
+    /**
+     * @return the number of (source, article) pairs with no path between them
+     */
+    public long unreachablePairs() {
+        return (long) sources.size() * articles - Arrays.stream(histogram).sum();
+    }
+
+    /**
+     * @return the mean length of the shortest path from a source to another
+     *      article it can reach, or 0 if there are none
+     */
+    public double averageDistance() {
+        final long pairs = reachablePairs();
+        long total = 0;
+        for (int d = 1; d < histogram.length; d++) {
+            total += d * histogram[d];
+        }
+        return pairs == 0 ? 0 : (double) total / pairs;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the smallest distance that at least that percent of the
+     *      (source, other article) pairs with a path are within, or 0 if there
+     *      are none. The 90th percentile is often called the effective diameter.
+     */
+    public int distancePercentile(double percentile) {
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * reachablePairs()));
+        long seen = 0;
+        for (int d = 1; d < histogram.length; d++) {
+            seen += histogram[d];
+            if (seen >= rank) {
+                return d;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return each source's eccentricity: the length of the longest shortest
+     *      path from it to any article it can reach, in the order searched
+     */
+    public Map<String, Integer> eccentricities() {
+        final Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < eccentricity.length; i++) {
+            result.put(sources.get(i), eccentricity[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the longest shortest path found from any source, which no
+     *      diameter of the graph can be shorter than
+     */
+    public int diameterLowerBound() {
+        return Arrays.stream(eccentricity).max().orElse(0);
+    }
+
+    /**
+     * @return the number of articles in the core: the largest strongly
+     *      connected component
+     */
+    public int coreSize() {
+        return coreSize;
+    }
+
+    /**
+     * @return an array of the lower bound and the upper bound on the diameter
+     *      of the core, where an upper bound of Integer.MAX_VALUE means there is
+     *      none (no source was in the core). The more sources in the core, and
+     *      the more central they are, the tighter these get.
+     */
+    public int[] coreDiameterBounds() {
+        int lower = 0;
+        int upper = Integer.MAX_VALUE;
+        for (int i = 0; i < coreIn.length; i++) {
+            if (coreIn[i] >= 0) {
+                lower = Math.max(lower, Math.max(coreOut[i], coreIn[i]));
+                upper = Math.min(upper, coreOut[i] + coreIn[i]);
+            }
+        }
+        return new int[] { lower, upper };
+    }
+
+    @Override
+    public String toString() {
+        final int[] core = coreDiameterBounds();
+        return String.format(Locale.ROOT,
+            "%d sources, %d reachable pairs (%d unreachable), average distance %.3f, "
+                + "effective diameter %d, diameter >= %d, core of %d articles with diameter in [%d, %s]",
+            sources.size(), reachablePairs(), unreachablePairs(), averageDistance(),
+            distancePercentile(90), diameterLowerBound(), coreSize, core[0],
+            core[1] == Integer.MAX_VALUE ? "?" : String.valueOf(core[1]));
+    }
+}
@@ -0,0 +1,225 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * A level-synchronous breadth-first search for the searches that are too big
+ * for one thread: traversals of the whole graph, or single queries whose
+ * middle levels cover much of it.
+ *
+ * Each level's frontier (and the set of visited vertices) is a bitset, and
+ * every level is expanded in parallel, one block of 64 * BLOCK vertices per
+ * task. Levels are expanded one of two ways (Beamer et al., "Direction
+ * Optimizing Breadth-First Search"):
+ *
+ *  - top-down: every frontier vertex claims its unvisited neighbors. This is
+ *    the usual way, and is cheap while the frontier is small.
+ *  - bottom-up: every unvisited vertex looks through its backlinks for one
+ *    in the frontier, and stops at the first. Once the frontier is a large
+ *    part of the graph, most of its edges lead to vertices that are already
+ *    visited, and this checks far fewer of them.
+ *
+ * The search switches to bottom-up once the frontier has more edges than
+ * the unvisited vertices (divided by ALPHA), and back to top-down once the
+ * frontier shrinks below the vertex count divided by BETA.
+ */
+final class FrontierSearch {
+
+    /* Words of the bitsets per parallel task
+     */
+    private static final int BLOCK = 64;
+
+    /* Switching thresholds, as tuned in the paper
+     */
+    private static final int ALPHA = 14;
+    private static final int BETA = 24;
+
+    private final Adjacency links;
+    private final Adjacency backlinks;
+    private final int vertices;
+    private final int words;
+
+    /**
+     * @param links the graph to search
+     * @param backlinks links.reverse()
+     */
+    FrontierSearch(Adjacency links, Adjacency backlinks) {
+        this.links = links;
+        this.backlinks = backlinks;
+        this.vertices = links.vertexCount();
+        this.words = (vertices + 63) >>> 6;
+    }
+
+    /**
+     * @param source a vertex
+     * @return the distance from source to every vertex, or -1 for those that
+     *      cannot be reached
+     */
+    int[] distancesFrom(int source) {
+        final int[] depth = new int[vertices];
+        Arrays.fill(depth, -1);
+        run(source, -1, depth, null);
+        return depth;
+    }
+
+    /**
+     * @param start the first vertex of the path
+     * @param end the last vertex of the path
+     * @return a shortest path as an array running from start to end, or null if
+     *      there is no such path
+     */
+    int[] path(int start, int end) {
+        final int[] depth = new int[vertices];
+        Arrays.fill(depth, -1);
+        final int[] parent = new int[vertices];
+        run(start, end, depth, parent);
+        if (depth[end] < 0) {
+            return null;
+        }
+        final int[] path = new int[depth[end] + 1];
+        for (int v = end, i = depth[end]; i >= 0; v = parent[v], i--) {
+            path[i] = v;
+        }
+        return path;
+    }
+
+    /* The search itself. Fills in depth (and parent, unless it is null) for
+     * every vertex reached, stopping early once end (if not negative) is.
+     */
+    private void run(int source, int end, int[] depth, int[] parent) {
+        final AtomicLongArray visited = new AtomicLongArray(words);
+        AtomicLongArray frontier = new AtomicLongArray(words);
+        AtomicLongArray next = new AtomicLongArray(words);
+
+        depth[source] = 0;
+        if (parent != null) {
+            parent[source] = source;
+        }
+        claim(visited, source);
+        claim(frontier, source);
+
+        // Sizes that drive the choice of direction: the frontier's vertices
+        // and out-edges, and the out-edges of the vertices still unvisited
+        long frontierVertices = 1;
+        long frontierEdges = links.degree(source);
+        long unvisitedEdges = links.edgeCount() - frontierEdges;
+        boolean bottomUp = false;
+
+        for (int level = 0; frontierVertices > 0 && (end < 0 || depth[end] < 0); level++) {
+            if (!bottomUp && frontierEdges > unvisitedEdges / ALPHA) {
+                bottomUp = true;
+            } else if (bottomUp && frontierVertices < vertices / BETA) {
+                bottomUp = false;
+            }
+
+            final boolean upwards = bottomUp;
+            final AtomicLongArray current = frontier;
+            final AtomicLongArray following = next;
+            final int nextDepth = level + 1;
+            final int blocks = (words + BLOCK - 1) / BLOCK;
+
+            // Each block reports how many vertices, and how many of their
+            // edges, it added to the next frontier
+            final long[][] added = IntStream.range(0, blocks).parallel()
+                .mapToObj(block -> upwards
+                    ? bottomUpStep(block, current, following, visited, nextDepth, depth, parent)
+                    : topDownStep(block, current, following, visited, nextDepth, depth, parent))
+                .toArray(long[][]::new);
+
+            frontierVertices = 0;
+            frontierEdges = 0;
+            for (long[] counts : added) {
+                frontierVertices += counts[0];
+                frontierEdges += counts[1];
+            }
+            unvisitedEdges -= frontierEdges;
+
+            frontier = next;
+            next = current;
+            IntStream.range(0, words).parallel().forEach(i -> current.set(i, 0));
+        }
+    }
+
+    /* Expands the frontier vertices in one block along their links. Neighbors
+     * can be in any block, so they are claimed with compare-and-set.
+     */
+    private long[] topDownStep(int block, AtomicLongArray frontier, AtomicLongArray next,
+            AtomicLongArray visited, int nextDepth, int[] depth, int[] parent) {
+        final Adjacency.Cursor neighbors = links.cursor();
+        long vertices = 0;
+        long edges = 0;
+        for (int word = block * BLOCK; word < Math.min(words, (block + 1) * BLOCK); word++) {
+            for (long bits = frontier.get(word); bits != 0; bits &= bits - 1) {
+                final int step = (word << 6) + Long.numberOfTrailingZeros(bits);
+                neighbors.reset(step);
+                for (int neighbor = neighbors.next(); neighbor >= 0; neighbor = neighbors.next()) {
+                    if (claim(visited, neighbor)) {
+                        depth[neighbor] = nextDepth;
+                        if (parent != null) {
+                            parent[neighbor] = step;
+                        }
+                        claim(next, neighbor);
+                        vertices++;
+                        edges += links.degree(neighbor);
+                    }
+                }
+            }
+        }
+        return new long[] { vertices, edges };
+    }
+
+    /* Looks for a frontier vertex among the backlinks of each unvisited
+     * vertex in one block. Only this task touches this block's words, so
+     * nothing needs to be claimed.
+     */
+    private long[] bottomUpStep(int block, AtomicLongArray frontier, AtomicLongArray next,
+            AtomicLongArray visited, int nextDepth, int[] depth, int[] parent) {
+        final Adjacency.Cursor inLinks = backlinks.cursor();
+        long vertices = 0;
+        long edges = 0;
+        for (int word = block * BLOCK; word < Math.min(words, (block + 1) * BLOCK); word++) {
+            final long seen = visited.get(word);
+            long found = 0;
+            for (int bit = 0; bit < 64; bit++) {
+                final int v = (word << 6) + bit;
+                if (v >= this.vertices || (seen & (1L << bit)) != 0) {
+                    continue;
+                }
+                inLinks.reset(v);
+                for (int u = inLinks.next(); u >= 0; u = inLinks.next()) {
+                    if (get(frontier, u)) {
+                        depth[v] = nextDepth;
+                        if (parent != null) {
+                            parent[v] = u;
+                        }
+                        found |= 1L << bit;
+                        vertices++;
+                        edges += links.degree(v);
+                        break;
+                    }
+                }
+            }
+            if (found != 0) {
+                visited.set(word, seen | found);
+                next.set(word, found);
+            }
+        }
+        return new long[] { vertices, edges };
+    }
+
+    private static boolean get(AtomicLongArray bits, int v) {
+        return (bits.get(v >>> 6) & (1L << v)) != 0;
+    }
+
+    /* Sets v's bit, and says whether this call is the one that set it
+     */
+    private static boolean claim(AtomicLongArray bits, int v) {
+        final long mask = 1L << v;
+        for (long old = bits.get(v >>> 6); (old & mask) == 0; old = bits.get(v >>> 6)) {
+            if (bits.compareAndSet(v >>> 6, old, old | mask)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes a random, scale-free directed graph in PathFinder's vertex and edge
+ * file format, for measuring performance on something larger than the test
+ * files. The same size and seed always give the same files.
+ *
+ * The graph is grown by preferential attachment, roughly the way wikipedia
+ * grows: articles arrive one at a time, and each links to some earlier ones,
+ * usually (with probability POPULAR) to one picked in proportion to how many
+ * links it already has, and otherwise to one picked uniformly. That gives a
+ * power-law in-degree distribution, with a few hub articles that nearly
+ * everything links to. Out-degrees are geometric around the average, and:
+ *
+ *  - a fraction (RECIPROCAL) of links are returned, which is what makes
+ *    cycles, and a giant strongly connected component
+ *  - a fraction (DEAD_ENDS) of articles link to nothing, and never return
+ *    links, so that some pairs have no path (as for wikipedia's dead-end
+ *    and orphan pages)
+ *
+ * Articles are named in a random order rather than the order they arrived
+ * in, so that the vertex file's order says nothing about the links (as
+ * wikipedia's alphabetical order doesn't), and the hubs are scattered
+ * through it.
+ */
+public final class GraphGenerator {
+
+    private static final double POPULAR = 0.8;
+    private static final double RECIPROCAL = 0.3;
+    private static final double DEAD_ENDS = 0.05;
+
+    private GraphGenerator() {}
+
+    /**
+     * @param id an article id
+     * @return the name the generated files give that article
+     */
+    public static String name(int id) {
+        return "Article_" + id;
+    }
+
+    /**
+     * Writes a graph.
+     * @param vertices how many articles
+     * @param averageLinks about how many links each article has
+     * @param seed the seed for all the random choices
+     * @param vertexFile name of the vertex file to (over)write
+     * @param edgeFile name of the edge file to (over)write
+     * @return how many links were written (some of which may be repeats)
+     * @throws IOException if either file cannot be written
+     */
+    public static long generate(int vertices, double averageLinks, long seed,
+            String vertexFile, String edgeFile) throws IOException {
+        final Random random = new Random(seed);
+
+        // label[v] is the name of the v'th article to arrive: a shuffle
+        final int[] label = new int[vertices];
+        for (int v = 0; v < vertices; v++) {
+            final int swap = random.nextInt(v + 1);
+            label[v] = label[swap];
+            label[swap] = v;
+        }
+
+        try (Writer out = writer(vertexFile)) {
+            out.write("# " + vertices + " generated articles (seed " + seed + ")\n");
+            for (int v = 0; v < vertices; v++) {
+                out.write(name(v));
+                out.write('\n');
+            }
+        }
+
+        // Every link's target so far, so that picking one of these uniformly
+        // picks an article in proportion to its in-degree
+        int[] targets = new int[1024];
+        int count = 0;
+        final boolean[] deadEnd = new boolean[vertices];
+
+        try (Writer out = writer(edgeFile)) {
+            out.write("# generated links (seed " + seed + ")\n");
+            for (int v = 1; v < vertices; v++) {
+                deadEnd[v] = random.nextDouble() < DEAD_ENDS;
+                // Geometric, with a mean that leaves room for the links that
+                // are returned, so that the total averages out to averageLinks
+                final int links = deadEnd[v] ? 0 : (int) (Math.log(1 - random.nextDouble())
+                    / Math.log(1 - 1 / (1 + averageLinks / (1 + RECIPROCAL))));
+                for (int i = 0; i < links; i++) {
+                    final int target = count > 0 && random.nextDouble() < POPULAR
+                        ? targets[random.nextInt(count)]
+                        : random.nextInt(v);
+                    if (count + 2 > targets.length) {
+                        targets = Arrays.copyOf(targets, targets.length * 2);
+                    }
+                    targets[count++] = target;
+                    link(out, label[v], label[target]);
+                    if (!deadEnd[target] && random.nextDouble() < RECIPROCAL) {
+                        targets[count++] = v;
+                        link(out, label[target], label[v]);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static Writer writer(String file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static void link(Writer out, int from, int to) throws IOException {
+        out.write(name(from));
+        out.write('\t');
+        out.write(name(to));
+        out.write('\n');
+    }
+
+    /**
+     * Writes a graph.
+     * @param args the number of articles, the average number of links per article,
+     *      the seed, the vertex file and the edge file
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 5) {
+            System.out.println("Usage: GraphGenerator <articles> <average links> <seed> <vertex file> <edge file>");
+            return;
+        }
+        final long links = generate(Integer.parseInt(args[0]), Double.parseDouble(args[1]),
+            Long.parseLong(args[2]), args[3], args[4]);
+        System.out.println("Wrote " + args[0] + " articles and " + links + " links");
+    }
+}
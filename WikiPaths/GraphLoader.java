@@ -0,0 +1,665 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reads a vertex file and an edge file on every core at once.
+ *
+ * Each file is cut into byte ranges that end on line breaks, and every range
+ * is mapped and parsed on its own thread. The format is the one PathFinder
+ * has always read: one article name per line in the vertex file, and two
+ * tab-separated article names per line in the edge file, ignoring empty
+ * lines and lines that start with '#'. Articles get ids in vertex file order.
+ *
+ * The links are then frozen into CompactGraphs (forwards and backwards) with
+ * a parallel count-then-fill: count each vertex's degree, prefix-sum those
+ * counts into offsets, then drop every edge into its slot.
+ *
+ * Lines that do not have two names, and links to names that are not in the
+ * vertex file, are skipped and reported (see problems), rather than
+ * stopping the load. Names go straight from the mapped file into an
+ * ArticleDictionary, and links are resolved from bytes, so no String is made
+ * for any line that is not reported.
+ *
+ * Wikipedia's page and pagelinks SQL dumps can be loaded instead, straight
+ * from the gzipped files (see loadDumps()), into the same forms.
+ */
+final class GraphLoader {
+
+    /* Roughly how many bytes of a file each thread parses at a time
+     */
+    private static final long CHUNK = 16 << 20;
+
+    /* At most this many skipped lines are described individually
+     */
+    private static final int SAMPLES = 10;
+
+    /* The results of a load
+     */
+    final ArticleDictionary articles;
+    final CompactGraph links;
+    final CompactGraph backlinks;
+
+    /* Human readable descriptions of anything that was skipped. Empty if the
+     * files were well formed.
+     */
+    final List<String> problems;
+
+    private GraphLoader(ArticleDictionary articles, CompactGraph links, CompactGraph backlinks,
+            List<String> problems) {
+        this.articles = articles;
+        this.links = links;
+        this.backlinks = backlinks;
+        this.problems = problems;
+    }
+
+    /**
+     * Loads a graph.
+     * @param nodeFile name of the file with the node names
+     * @param edgeFile name of the file with the edge names
+     * @return the graph, and a description of any lines that were skipped
+     * @throws IOException if either file cannot be read
+     */
+    static GraphLoader load(String nodeFile, String edgeFile) throws IOException {
+
+        // Each phase is timed for a LoadEvent, which costs nothing unless a
+        // Flight Recorder recording has those enabled
+        final LoadEvent event = new LoadEvent();
+        event.begin();
+        final long cpu = processCpuTime();
+        final long started = System.nanoTime();
+
+        // Names are found in parallel, but numbered in order
+        final ArticleDictionary.Builder bob = new ArticleDictionary.Builder();
+        forEachChunk(nodeFile, GraphLoader::names).forEach(names -> {
+            for (int i = 0; i < names.size; i++) {
+                bob.add(names.buffer, names.starts[i], names.ends[i]);
+            }
+        });
+        final ArticleDictionary dictionary = bob.build();
+        final long named = System.nanoTime();
+
+        final List<Edges> chunks = forEachChunk(edgeFile, (buffer, size) -> edges(buffer, size, dictionary));
+
+        // Totals, and messages with line numbers that count from the top of
+        // the file rather than the top of each chunk
+        final List<String> problems = new ArrayList<String>();
+        int malformed = 0;
+        int unknown = 0;
+        int lines = 0;
+        for (Edges chunk : chunks) {
+            malformed += chunk.malformed;
+            unknown += chunk.unknown;
+            for (int i = 0; i < chunk.sampleLines.size() && problems.size() < SAMPLES; i++) {
+                problems.add(edgeFile + ":" + (lines + chunk.sampleLines.get(i)) + ": "
+                    + chunk.sampleText.get(i));
+            }
+            lines += chunk.lines;
+        }
+        if (malformed + unknown > 0) {
+            problems.add(0, "Skipped " + malformed + " malformed line(s) and " + unknown
+                + " link(s) to unknown articles in " + edgeFile);
+        }
+
+        final long linked = System.nanoTime();
+
+        final CompactGraph links = freeze(dictionary.size(), chunks, false);
+        final CompactGraph backlinks = freeze(dictionary.size(), chunks, true);
+        event.end();
+        if (event.shouldCommit()) {
+            event.nodeFile = nodeFile;
+            event.edgeFile = edgeFile;
+            event.articles = dictionary.size();
+            event.links = links.edgeCount();
+            event.skipped = malformed + unknown;
+            event.namesTime = named - started;
+            event.linksTime = linked - named;
+            event.freezeTime = System.nanoTime() - linked;
+            event.cpuTime = cpu < 0 ? -1 : processCpuTime() - cpu;
+            event.commit();
+        }
+        return new GraphLoader(dictionary, links, backlinks, problems);
+    }
+
+    /**
+     * @param file the name of a file to load
+     * @return whether it is a SQL dump (see loadDumps()), by its extension,
+     *      rather than a vertex or edge file
+     */
+    static boolean isDump(String file) {
+        return file.endsWith(".sql") || file.endsWith(".sql.gz");
+    }
+
+    /**
+     * Like loadDumps(String, String, String), for pagelinks dumps that name
+     * their targets through a linktarget dump: it is looked for next to
+     * linkDump, under the same name with "pagelinks" in it replaced by
+     * "linktarget".
+     * @param pageDump the dump of the page table
+     * @param linkDump the dump of the pagelinks table
+     * @return the graph, and a summary of anything that was skipped
+     * @throws IOException if a dump cannot be read, or is not of its table
+     */
+    static GraphLoader loadDumps(String pageDump, String linkDump) throws IOException {
+        final File targets = new File(new File(linkDump).getParentFile(),
+            new File(linkDump).getName().replace("pagelinks", "linktarget"));
+        return loadDumps(pageDump, linkDump, targets.exists() ? targets.getPath() : null);
+    }
+
+    /**
+     * Loads a graph straight from wikipedia's SQL dumps (gzipped or not; see
+     * SqlDump), rather than from vertex and edge files made from them.
+     *
+     * Articles are the pages in the main namespace that aren't redirects,
+     * named by their titles, url-encoded as in vertex files, and numbered in
+     * the order of the page dump. Links out of other pages are skipped, and
+     * so are links to anything that is not an article (redirects, other
+     * namespaces, and titles with no page), which are counted in problems.
+     * @param pageDump the dump of the page table
+     * @param linkDump the dump of the pagelinks table
+     * @param targetDump the dump of the linktarget table, which newer
+     *      pagelinks tables name their targets through (by pl_target_id rather
+     *      than pl_namespace and pl_title). May be null for older ones.
+     * @return the graph, and a summary of anything that was skipped
+     * @throws IOException if a dump cannot be read, or is not of its table
+     */
+    static GraphLoader loadDumps(String pageDump, String linkDump, String targetDump) throws IOException {
+        final LoadEvent event = new LoadEvent();
+        event.begin();
+        final long cpu = processCpuTime();
+        final long started = System.nanoTime();
+        final List<String> problems = new ArrayList<String>();
+
+        // Articles, with the page ids that links know them by. Titles are
+        // collected in parallel, but numbered in order.
+        final SqlDump pageRows = new SqlDump(pageDump, "page");
+        final int pageId = pageRows.column("page_id");
+        final int pageNamespace = pageRows.column("page_namespace");
+        final int pageTitle = pageRows.column("page_title");
+        final int pageRedirect = pageRows.column("page_is_redirect");
+        final List<Titles> pages = pageRows.rows(Titles::new, (titles, row) -> {
+            if (row.number(pageNamespace) == 0 && row.number(pageRedirect) == 0) {
+                final int length = row.title(pageTitle);
+                titles.add(row.number(pageId), row.encoded(), length);
+            }
+        });
+        malformed(pageRows, pageDump, problems);
+
+        final ArticleDictionary.Builder bob = new ArticleDictionary.Builder();
+        final IdMap articleOfPage = new IdMap();
+        for (Titles titles : pages) {
+            final ByteBuffer bytes = ByteBuffer.wrap(titles.bytes);
+            for (int i = 0; i < titles.size; i++) {
+                articleOfPage.put(titles.pages[i], bob.add(bytes, i == 0 ? 0 : titles.ends[i - 1], titles.ends[i]));
+            }
+        }
+        final ArticleDictionary dictionary = bob.build();
+        final long named = System.nanoTime();
+
+        // Links, resolved to ids as they are parsed: their targets by title,
+        // or through the linktarget table
+        final SqlDump linkRows = new SqlDump(linkDump, "pagelinks");
+        final int linkFrom = linkRows.column("pl_from");
+        final boolean byTarget = linkRows.hasColumn("pl_target_id");
+        final IdMap articleOfTarget = byTarget ? targets(linkDump, targetDump, dictionary, problems) : null;
+        final int linkTarget = linkRows.column(byTarget ? "pl_target_id" : "pl_title");
+        final int linkNamespace = byTarget ? -1 : linkRows.column("pl_namespace");
+        final List<Edges> chunks = linkRows.rows(Edges::new, (edges, row) -> {
+            final int from = articleOfPage.get(row.number(linkFrom));
+            if (from >= 0) {
+                final int to = byTarget ? articleOfTarget.get(row.number(linkTarget))
+                    : row.number(linkNamespace) != 0 ? -1
+                    : article(row, linkTarget, dictionary);
+                if (to < 0) {
+                    edges.unknown++;
+                } else {
+                    edges.add(from, to);
+                }
+            }
+        });
+        malformed(linkRows, linkDump, problems);
+        final long unknown = chunks.stream().mapToLong(chunk -> chunk.unknown).sum();
+        if (unknown > 0) {
+            problems.add("Skipped " + unknown + " link(s) to pages that are not articles (redirects, "
+                + "other namespaces, or missing) in " + linkDump);
+        }
+        final long linked = System.nanoTime();
+
+        final CompactGraph links = freeze(dictionary.size(), chunks, false);
+        final CompactGraph backlinks = freeze(dictionary.size(), chunks, true);
+        event.end();
+        if (event.shouldCommit()) {
+            event.nodeFile = pageDump;
+            event.edgeFile = linkDump;
+            event.articles = dictionary.size();
+            event.links = links.edgeCount();
+            event.skipped = unknown + pageRows.malformed() + linkRows.malformed();
+            event.namesTime = named - started;
+            event.linksTime = linked - named;
+            event.freezeTime = System.nanoTime() - linked;
+            event.cpuTime = cpu < 0 ? -1 : processCpuTime() - cpu;
+            event.commit();
+        }
+        return new GraphLoader(dictionary, links, backlinks, problems);
+    }
+
+    /* For each link target in the main namespace that is an article, the
+     * article's id, by link target id
+     */
+    private static IdMap targets(String linkDump, String targetDump, ArticleDictionary articles,
+            List<String> problems) throws IOException {
+        if (targetDump == null) {
+            throw new IOException(linkDump + " names its links' targets by pl_target_id, "
+                + "so it needs the linktarget dump too");
+        }
+        final SqlDump rows = new SqlDump(targetDump, "linktarget");
+        final int id = rows.column("lt_id");
+        final int namespace = rows.column("lt_namespace");
+        final int title = rows.column("lt_title");
+        final List<IdMap> batches = rows.rows(IdMap::new, (targets, row) -> {
+            if (row.number(namespace) == 0) {
+                final int article = article(row, title, articles);
+                if (article >= 0) {
+                    targets.put(row.number(id), article);
+                }
+            }
+        });
+        malformed(rows, targetDump, problems);
+
+        final IdMap targets = new IdMap();
+        batches.forEach(targets::putAll);
+        return targets;
+    }
+
+    /* The id of the article whose title is in column of row, or -1 if none
+     * has it
+     */
+    private static int article(SqlDump.Row row, int column, ArticleDictionary articles) {
+        final int length = row.title(column);
+        return articles.id(row.encoded(), 0, length);
+    }
+
+    /* Reports a dump's malformed rows, if it had any
+     */
+    private static void malformed(SqlDump rows, String file, List<String> problems) {
+        if (rows.malformed() > 0) {
+            problems.add("Skipped " + rows.malformed() + " malformed row(s) in " + file);
+        }
+    }
+
+    /* CPU time used by the whole process so far (loading runs on every core),
+     * in nanoseconds, or -1 if the JVM can't tell
+     */
+    private static long processCpuTime() {
+        final java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        return os instanceof com.sun.management.OperatingSystemMXBean
+            ? ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime()
+            : -1;
+    }
+
+    /* What to make of one chunk of a file: the chunk's bytes, from 0 to size
+     */
+    private interface Parser<T> {
+        T parse(ByteBuffer buffer, int size);
+    }
+
+    /* Cuts file into chunks that start and end on line breaks, and parses
+     * them in parallel. Results come back in file order.
+     */
+    private static <T> List<T> forEachChunk(String file, Parser<T> parser) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+
+            final long size = channel.size();
+            final int count = (int) Math.max(1, size / CHUNK);
+
+            // bounds[i] to bounds[i + 1] is chunk i. Each bound is moved
+            // forward to just after the next line break.
+            final long[] bounds = new long[count + 1];
+            bounds[count] = size;
+            for (int i = 1; i < count; i++) {
+                bounds[i] = nextLine(channel, Math.max(bounds[i - 1], size / count * i), size);
+            }
+
+            final List<MappedByteBuffer> buffers = new ArrayList<MappedByteBuffer>();
+            for (int i = 0; i < count; i++) {
+                if (bounds[i + 1] - bounds[i] > Integer.MAX_VALUE) {
+                    throw new IOException(file + " has a line too long to read");
+                }
+                buffers.add(channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]));
+            }
+            return buffers.parallelStream()
+                .map(buffer -> parser.parse(buffer, buffer.limit()))
+                .collect(Collectors.toList());
+        }
+    }
+
+    /* The position just after the first line break at or after position
+     */
+    private static long nextLine(FileChannel channel, long position, long size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (position < size) {
+            buffer.clear();
+            final int read = channel.read(buffer, position);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += Math.max(read, 0);
+        }
+        return size;
+    }
+
+    /* The end of the line starting at start: the index of its line break, or
+     * size if it is the last line and has none
+     */
+    private static int lineEnd(ByteBuffer buffer, int start, int size) {
+        int end = start;
+        while (end < size && buffer.get(end) != '\n') {
+            end++;
+        }
+        return end;
+    }
+
+    /* The end of a line's contents, leaving out the '\r' of a "\r\n" break
+     */
+    private static int trim(ByteBuffer buffer, int start, int end) {
+        return end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+    }
+
+    /* Whether a line should be ignored: it is empty, or is a comment
+     */
+    private static boolean skip(ByteBuffer buffer, int start, int end) {
+        return start == end || buffer.get(start) == '#';
+    }
+
+    private static String string(ByteBuffer buffer, int start, int end) {
+        final byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /* Where every article name in one chunk of a vertex file is
+     */
+    private static Names names(ByteBuffer buffer, int size) {
+        final Names names = new Names(buffer);
+        for (int start = 0; start < size; ) {
+            final int next = lineEnd(buffer, start, size);
+            final int end = trim(buffer, start, next);
+            if (!skip(buffer, start, end)) {
+                names.add(start, end);
+            }
+            start = next + 1;
+        }
+        return names;
+    }
+
+    /* The names in one chunk of a vertex file, as ranges of its bytes
+     */
+    private static final class Names {
+
+        private final ByteBuffer buffer;
+        private int[] starts = new int[1024];
+        private int[] ends = new int[1024];
+        private int size;
+
+        Names(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void add(int start, int end) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+    }
+
+    /* Every link in one chunk of an edge file, resolved to ids, along with
+     * anything that had to be skipped
+     */
+    private static Edges edges(ByteBuffer buffer, int size, ArticleDictionary articles) {
+        final Edges edges = new Edges();
+        for (int start = 0; start < size; ) {
+            final int next = lineEnd(buffer, start, size);
+            final int end = trim(buffer, start, next);
+            edges.lines++;
+            if (!skip(buffer, start, end)) {
+
+                // The first two tab-separated fields name the two articles
+                // (anything after a second tab is ignored)
+                int tab = start;
+                while (tab < end && buffer.get(tab) != '\t') {
+                    tab++;
+                }
+                int stop = tab + 1;
+                while (stop < end && buffer.get(stop) != '\t') {
+                    stop++;
+                }
+
+                if (tab == start || tab + 1 >= stop) {
+                    edges.malformed++;
+                    edges.sample("malformed line \"" + string(buffer, start, end) + "\"");
+                } else {
+                    final int from = articles.id(buffer, start, tab);
+                    final int to = articles.id(buffer, tab + 1, stop);
+                    if (from < 0 || to < 0) {
+                        edges.unknown++;
+                        edges.sample("unknown article \"" + (from < 0
+                            ? string(buffer, start, tab)
+                            : string(buffer, tab + 1, stop)) + "\"");
+                    } else {
+                        edges.add(from, to);
+                    }
+                }
+            }
+            start = next + 1;
+        }
+        return edges;
+    }
+
+    /* The links found in one chunk of an edge file
+     */
+    private static final class Edges {
+
+        private int[] froms = new int[1024];
+        private int[] tos = new int[1024];
+        private int size;
+
+        private int lines;
+        private int malformed;
+        private int unknown;
+        private final List<Integer> sampleLines = new ArrayList<Integer>();
+        private final List<String> sampleText = new ArrayList<String>();
+
+        void add(int from, int to) {
+            if (size == froms.length) {
+                froms = Arrays.copyOf(froms, size * 2);
+                tos = Arrays.copyOf(tos, size * 2);
+            }
+            froms[size] = from;
+            tos[size] = to;
+            size++;
+        }
+
+        /* Describes the current line, if there is room
+         */
+        void sample(String text) {
+            if (sampleText.size() < SAMPLES) {
+                sampleLines.add(lines);
+                sampleText.add(text);
+            }
+        }
+    }
+
+    /* The articles in one batch of a page dump: page ids, and url-encoded
+     * titles back to back (title i ends at ends[i])
+     */
+    private static final class Titles {
+
+        private long[] pages = new long[1024];
+        private int[] ends = new int[1024];
+        private byte[] bytes = new byte[16384];
+        private int size;
+
+        void add(long page, byte[] title, int length) {
+            if (size == pages.length) {
+                pages = Arrays.copyOf(pages, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            final int start = size == 0 ? 0 : ends[size - 1];
+            if (start + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, start + length));
+            }
+            System.arraycopy(title, 0, bytes, start, length);
+            pages[size] = page;
+            ends[size] = start + length;
+            size++;
+        }
+    }
+
+    /* Article ids by page or link target id: an open-addressed table (linear
+     * probing, at most half full) of non-negative keys, like the one in
+     * ArticleDictionary
+     */
+    private static final class IdMap {
+
+        private long[] keys = new long[1024];
+        private int[] values = new int[1024];
+        private int size;
+
+        IdMap() {
+            Arrays.fill(keys, -1);
+        }
+
+        void put(long key, int value) {
+            if (key < 0) {
+                return;
+            }
+            if (2 * (size + 1) > keys.length) {
+                final long[] oldKeys = keys;
+                final int[] oldValues = values;
+                keys = new long[oldKeys.length * 2];
+                values = new int[oldKeys.length * 2];
+                Arrays.fill(keys, -1);
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] >= 0) {
+                        put(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            int slot = slot(key);
+            while (keys[slot] >= 0 && keys[slot] != key) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            size += keys[slot] < 0 ? 1 : 0;
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        /* The value of key, or -1 if it has none
+         */
+        int get(long key) {
+            if (key < 0) {
+                return -1;
+            }
+            for (int slot = slot(key); keys[slot] >= 0; slot = (slot + 1) & (keys.length - 1)) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return -1;
+        }
+
+        void putAll(IdMap other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] >= 0) {
+                    put(other.keys[i], other.values[i]);
+                }
+            }
+        }
+
+        private int slot(long key) {
+            return (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & (keys.length - 1);
+        }
+    }
+
+    /* Count-then-fill, in parallel, from every chunk's links. If reversed,
+     * every link is turned around. Each slice is then sorted and
+     * deduplicated, as in CompactGraph.
+     */
+    private static CompactGraph freeze(int vertices, List<Edges> chunks, boolean reversed) {
+
+        final AtomicIntegerArray degrees = new AtomicIntegerArray(vertices);
+        chunks.parallelStream().forEach(chunk -> {
+            final int[] froms = reversed ? chunk.tos : chunk.froms;
+            for (int i = 0; i < chunk.size; i++) {
+                degrees.incrementAndGet(froms[i]);
+            }
+        });
+
+        final int[] offsets = new int[vertices + 1];
+        for (int v = 0; v < vertices; v++) {
+            offsets[v + 1] = Math.addExact(offsets[v], degrees.get(v));
+        }
+
+        // 'cursor' is where the next edge out of each vertex goes
+        final AtomicIntegerArray cursor = new AtomicIntegerArray(Arrays.copyOf(offsets, vertices));
+        final int[] targets = new int[offsets[vertices]];
+        chunks.parallelStream().forEach(chunk -> {
+            final int[] froms = reversed ? chunk.tos : chunk.froms;
+            final int[] tos = reversed ? chunk.froms : chunk.tos;
+            for (int i = 0; i < chunk.size; i++) {
+                targets[cursor.getAndIncrement(froms[i])] = tos[i];
+            }
+        });
+
+        // Sort each slice, and count what is left of it without repeats
+        final int[] distinct = new int[vertices + 1];
+        IntStream.range(0, vertices).parallel().forEach(v -> {
+            Arrays.sort(targets, offsets[v], offsets[v + 1]);
+            int count = 0;
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                if (i == offsets[v] || targets[i] != targets[i - 1]) {
+                    count++;
+                }
+            }
+            distinct[v + 1] = count;
+        });
+        for (int v = 0; v < vertices; v++) {
+            distinct[v + 1] += distinct[v];
+        }
+        if (distinct[vertices] == targets.length) {
+            return new CompactGraph(offsets, targets);
+        }
+
+        final int[] packed = new int[distinct[vertices]];
+        IntStream.range(0, vertices).parallel().forEach(v -> {
+            int out = distinct[v];
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                if (i == offsets[v] || targets[i] != targets[i - 1]) {
+                    packed[out++] = targets[i];
+                }
+            }
+        });
+        return new CompactGraph(distinct, packed);
+    }
+}
@@ -0,0 +1,451 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+
+/**
+ * A loaded graph, written once to a binary file that can then be opened by
+ * mapping it into memory rather than parsing it.
+ *
+ * The file is a fixed-size header followed by eight sections, each starting
+ * on an 8 byte boundary. Everything is little-endian.
+ *
+ *      int     magic (MAGIC)
+ *      int     format version (VERSION)
+ *      int     number of vertices, n
+ *      int     how the links are stored: PLAIN or COMPRESSED
+ *      long    number of edges, m
+ *      long[2] position and length in bytes of each section, in this order:
+ *
+ *      int[n + 1]  offsets of the links (as in CompactGraph)
+ *      int[m]      targets of the links
+ *      int[n + 1]  offsets of the backlinks
+ *      int[m]      targets of the backlinks
+ *      int[n + 1]  offsets of each article name in the name bytes
+ *      byte[]      the UTF-8 bytes of every article name, back to back
+ *      int[n]      article ids, sorted by name (compared as unsigned bytes)
+ *      int[n]      the id of the article on each line of the vertex file (see
+ *                  VertexOrder)
+ *
+ * A graph that was compressed (see CompressedGraph) is written compressed,
+ * and then the first four sections are instead:
+ *
+ *      long[n + 1] where each of the links' lists starts (as in CompressedGraph)
+ *      long        the links' window (as in CompressedGraph)
+ *      long        how many pages of lists there are, p
+ *      long[p]     how many bytes each page takes up
+ *      byte[]      the pages, back to back
+ *      long[n + 1] and the same for the backlinks
+ *      ...
+ *
+ * Opening a snapshot maps each section read-only and wraps it (each page of
+ * compressed lists on its own), so it costs about the same no matter how
+ * large the graph is, and every process that opens the same file shares the
+ * same pages of the OS's file cache. In particular, a compressed graph is
+ * searched straight out of the file, and its links never take up the room
+ * of int arrays, as they do while it is being loaded and compressed.
+ */
+final class GraphSnapshot {
+
+    /* "WPGS", for WikiPaths graph snapshot
+     */
+    static final int MAGIC = 0x57504753;
+
+    /* Bumped whenever the layout above changes
+     */
+    static final int VERSION = 3;
+
+    /* How the links are stored. Version 1 and 2 snapshots are always PLAIN.
+     */
+    private static final int PLAIN = 0;
+    private static final int COMPRESSED = 1;
+
+    /* Version 1 snapshots are the same as version 2, but without the last
+     * section, since ids were always in vertex file order
+     */
+    private static final int SECTIONS = 8;
+    private static final int HEADER = 24 + 16 * SECTIONS;
+
+    /* The most bytes a section can hold, since each is mapped as one buffer
+     */
+    private static final long MAX_SECTION = Integer.MAX_VALUE;
+
+    /* The contents of an opened snapshot
+     */
+    final ArticleIndex articles;
+    final Adjacency links;
+    final Adjacency backlinks;
+    final VertexOrder order;
+
+    private GraphSnapshot(ArticleIndex articles, Adjacency links, Adjacency backlinks,
+            VertexOrder order) {
+        this.articles = articles;
+        this.links = links;
+        this.backlinks = backlinks;
+        this.order = order;
+    }
+
+    /**
+     * Maps a snapshot file into memory.
+     * @param file name of a file written by write()
+     * @return the snapshot's contents
+     * @throws IOException if the file cannot be read, or is not a snapshot of
+     *      this version
+     */
+    static GraphSnapshot open(String file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a graph snapshot");
+            }
+            final int version = header.getInt(4);
+            if (version < 1 || version > VERSION) {
+                throw new IOException(file + " is a version " + version
+                    + " snapshot; expected version " + VERSION + " or earlier");
+            }
+            final int storage = header.getInt(12);
+            if (storage != PLAIN && storage != COMPRESSED) {
+                throw new IOException(file + " stores its links in an unknown way (" + storage + ")");
+            }
+
+            // Mappings stay valid after the channel is closed. Compressed
+            // lists are mapped a page at a time, below.
+            final ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+            for (int i = 0; i < (version == 1 ? SECTIONS - 1 : SECTIONS); i++) {
+                if (storage == COMPRESSED && (i == 1 || i == 3)) {
+                    continue;
+                }
+                sections[i] = map(channel, file, header.getLong(24 + 16 * i), header.getLong(32 + 16 * i));
+            }
+
+            final long edges = header.getLong(16);
+            final Adjacency links = storage == COMPRESSED
+                ? compressedGraph(channel, file, sections[0], header.getLong(40), header.getLong(48), edges)
+                : new MappedGraph(sections[0].asIntBuffer(), sections[1].asIntBuffer());
+            final Adjacency backlinks = storage == COMPRESSED
+                ? compressedGraph(channel, file, sections[2], header.getLong(72), header.getLong(80), edges)
+                : new MappedGraph(sections[2].asIntBuffer(), sections[3].asIntBuffer());
+            return new GraphSnapshot(
+                new MappedArticles(sections[5], sections[4].asIntBuffer(), sections[6].asIntBuffer()),
+                links, backlinks,
+                version == 1 ? VertexOrder.FILE : VertexOrder.of(sections[7].asIntBuffer()));
+        }
+    }
+
+    /* Maps length bytes of the file from position, read-only
+     */
+    private static ByteBuffer map(FileChannel channel, String file, long position, long length)
+            throws IOException {
+        if (length > MAX_SECTION) {
+            throw new IOException(file + " has a section too large to map");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /* Maps a compressed graph's pages from its lists section (at position,
+     * length bytes long), and wraps them with its offsets section
+     */
+    private static CompressedGraph compressedGraph(FileChannel channel, String file, ByteBuffer offsets,
+            long position, long length, long edges) throws IOException {
+        final ByteBuffer counts = map(channel, file, position, Math.min(length, 16));
+        final long pageCount = counts.remaining() < 16 ? -1 : counts.getLong(8);
+        if (pageCount < 0 || pageCount > (length - 16) / 8) {
+            throw new IOException(file + " has a corrupt compressed graph");
+        }
+        final ByteBuffer pageLengths = map(channel, file, position + 16, 8 * pageCount);
+        final ByteBuffer[] pages = new ByteBuffer[(int) pageCount];
+        long at = position + 16 + 8 * pageCount;
+        for (int i = 0; i < pages.length; i++) {
+            final long pageLength = pageLengths.getLong(8 * i);
+            if (pageLength < 0 || pageLength > position + length - at) {
+                throw new IOException(file + " has a corrupt compressed graph");
+            }
+            pages[i] = map(channel, file, at, pageLength);
+            at += pageLength;
+        }
+        return new CompressedGraph(pages, offsets.asLongBuffer(), edges, (int) counts.getLong(0));
+    }
+
+    /**
+     * Writes a graph to a snapshot file, replacing the file if it exists.
+     * @param file name of the file to write
+     * @param articles the graph's article names
+     * @param links the graph's links
+     * @param backlinks the reverse of links
+     * @param order how the graph's vertices are numbered
+     * @throws IOException if the file cannot be written
+     */
+    static void write(String file, ArticleIndex articles, Adjacency links, Adjacency backlinks,
+            VertexOrder order) throws IOException {
+
+        final int vertices = links.vertexCount();
+        final long edges = links.edgeCount();
+        final CompressedGraph packedLinks = compressed(links);
+        final CompressedGraph packedBacklinks = packedLinks == null ? null : compressed(backlinks);
+        final int storage = packedBacklinks == null ? PLAIN : COMPRESSED;
+
+        // Every name, encoded once up front, since they are needed both to
+        // size the name section and to sort
+        final byte[][] names = new byte[vertices][];
+        long nameBytes = 0;
+        for (int v = 0; v < vertices; v++) {
+            names[v] = articles.name(v).getBytes(StandardCharsets.UTF_8);
+            nameBytes += names[v].length;
+        }
+
+        final long[] lengths = storage == COMPRESSED ? new long[] {
+            8L * (vertices + 1), listsLength(packedLinks),
+            8L * (vertices + 1), listsLength(packedBacklinks),
+            4L * (vertices + 1), nameBytes,
+            4L * vertices, 4L * vertices
+        } : new long[] {
+            4L * (vertices + 1), 4L * edges,
+            4L * (vertices + 1), 4L * edges,
+            4L * (vertices + 1), nameBytes,
+            4L * vertices, 4L * vertices
+        };
+
+        // open() maps every section as one buffer (except compressed lists,
+        // which it maps a page at a time, and no page is larger than an
+        // array), so a file with any section larger than that could be
+        // written, but never opened
+        for (int i = 0; i < SECTIONS; i++) {
+            if (lengths[i] > MAX_SECTION && !(storage == COMPRESSED && (i == 1 || i == 3))) {
+                throw new IOException("Graph is too large for a version " + VERSION + " snapshot");
+            }
+        }
+        final int[] sorted = IntStream.range(0, vertices).boxed()
+            .sorted((a, b) -> compare(names[a], names[b]))
+            .mapToInt(x -> x)
+            .toArray();
+        final long[] positions = new long[SECTIONS];
+        long end = align(HEADER);
+        for (int i = 0; i < SECTIONS; i++) {
+            positions[i] = end;
+            end = align(end + lengths[i]);
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            final Output out = new Output(channel);
+
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(vertices);
+            out.putInt(storage);
+            out.putLong(edges);
+            for (int i = 0; i < SECTIONS; i++) {
+                out.putLong(positions[i]);
+                out.putLong(lengths[i]);
+            }
+
+            out.seek(positions[0]);
+            if (storage == COMPRESSED) {
+                putCompressed(out, packedLinks, positions[1]);
+                out.seek(positions[2]);
+                putCompressed(out, packedBacklinks, positions[3]);
+            } else {
+                putGraph(out, links, positions[1]);
+                out.seek(positions[2]);
+                putGraph(out, backlinks, positions[3]);
+            }
+
+            out.seek(positions[4]);
+            int offset = 0;
+            for (int v = 0; v < vertices; v++) {
+                out.putInt(offset);
+                offset += names[v].length;
+            }
+            out.putInt(offset);
+            out.seek(positions[5]);
+            for (int v = 0; v < vertices; v++) {
+                out.putBytes(names[v]);
+            }
+            out.seek(positions[6]);
+            for (int v : sorted) {
+                out.putInt(v);
+            }
+            out.seek(positions[7]);
+            for (int p = 0; p < vertices; p++) {
+                out.putInt(order.id(p));
+            }
+            out.seek(end);
+            out.flush();
+        }
+    }
+
+    /* Writes graph's offsets section where out is, then its targets section
+     * at targetsPosition
+     */
+    private static void putGraph(Output out, Adjacency graph, long targetsPosition) throws IOException {
+        int offset = 0;
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            out.putInt(offset);
+            offset += graph.degree(v);
+        }
+        out.putInt(offset);
+
+        out.seek(targetsPosition);
+        final Adjacency.Cursor neighbors = graph.cursor();
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            neighbors.reset(v);
+            for (int w = neighbors.next(); w >= 0; w = neighbors.next()) {
+                out.putInt(w);
+            }
+        }
+    }
+
+    /* Writes a compressed graph's offsets section where out is, then its
+     * lists section at listsPosition
+     */
+    private static void putCompressed(Output out, CompressedGraph graph, long listsPosition)
+            throws IOException {
+        for (int v = 0; v <= graph.vertexCount(); v++) {
+            out.putLong(graph.offset(v));
+        }
+
+        out.seek(listsPosition);
+        out.putLong(graph.window());
+        out.putLong(graph.pageCount());
+        for (int i = 0; i < graph.pageCount(); i++) {
+            out.putLong(graph.page(i).limit());
+        }
+        for (int i = 0; i < graph.pageCount(); i++) {
+            out.putBytes(graph.page(i));
+        }
+    }
+
+    /* How many bytes a compressed graph's lists section takes up
+     */
+    private static long listsLength(CompressedGraph graph) {
+        long length = 16 + 8L * graph.pageCount();
+        for (int i = 0; i < graph.pageCount(); i++) {
+            length += graph.page(i).limit();
+        }
+        return length;
+    }
+
+    /* graph as a CompressedGraph: itself if it is one, compressed again (as
+     * GraphVersion does) if it is changes on top of one, and otherwise null
+     */
+    private static CompressedGraph compressed(Adjacency graph) {
+        if (graph instanceof CompressedGraph) {
+            return (CompressedGraph) graph;
+        }
+        final Adjacency base = graph instanceof DeltaGraph ? ((DeltaGraph) graph).base() : null;
+        return base instanceof CompressedGraph
+            ? CompressedGraph.compress(graph, ((CompressedGraph) base).window())
+            : null;
+    }
+
+    /* Rounds up to a multiple of 8
+     */
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /* Compares byte arrays as strings of unsigned bytes
+     */
+    static int compare(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length && i < b.length; i++) {
+            final int sign = (a[i] & 0xff) - (b[i] & 0xff);
+            if (sign != 0) {
+                return sign;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /* A little-endian, buffered, sequential writer that can skip ahead
+     */
+    private static final class Output {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer =
+            ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int x) throws IOException {
+            room(4);
+            buffer.putInt(x);
+            position += 4;
+        }
+
+        void putLong(long x) throws IOException {
+            room(8);
+            buffer.putLong(x);
+            position += 8;
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            putBytes(ByteBuffer.wrap(bytes));
+        }
+
+        /* Writes the bytes from the buffer's position to its limit, moving
+         * its position along
+         */
+        void putBytes(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                room(1);
+                final int n = Math.min(buffer.remaining(), bytes.remaining());
+                final ByteBuffer slice = bytes.duplicate();
+                slice.limit(slice.position() + n);
+                buffer.put(slice);
+                bytes.position(bytes.position() + n);
+                position += n;
+            }
+        }
+
+        /* Pads with zeros up to target, which must not be behind us
+         */
+        void seek(long target) throws IOException {
+            while (position < target) {
+                room(1);
+                buffer.put((byte) 0);
+                position++;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Loads a graph from text files and writes it to a snapshot.
+     * @param args the vertex file, the edge file, the snapshot file to write, and
+     *      optionally how to number the vertices (see VertexOrdering), and then
+     *      "compressed" to write the links compressed (see CompressedGraph)
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || args.length > 5 || args.length == 5 && !args[4].equals("compressed")) {
+            System.out.println("Usage: GraphSnapshot <vertex file> <edge file> <snapshot file> "
+                + "[ordering [compressed]]");
+            return;
+        }
+        new PathFinder(args[0], args[1],
+            args.length >= 4 ? VertexOrdering.valueOf(args[3]) : VertexOrdering.FILE,
+            args.length == 5).save(args[2]);
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * One immutable version of the whole graph: its articles, links and
+ * backlinks, and whatever indexes are known to be right for it. Queries read
+ * the current version once and use it throughout, so they see a consistent
+ * graph no matter what changes while they run (see LiveGraph).
+ *
+ * Changes make new versions. An index is carried over to a new version only
+ * if it is still sound there, and is otherwise dropped until the next
+ * compaction builds it again:
+ *
+ *  - the component index survives removed links (which can only take paths
+ *    away), new articles (which it treats as reaching anything), and added
+ *    links within one component (which connect nothing new)
+ *  - the landmark index survives nothing, since added links make its lower
+ *    bounds too high, and removed links make its upper bounds too low
+ */
+final class GraphVersion {
+
+    final ArticleIndex articles;
+    final Adjacency links;
+    final Adjacency backlinks;
+    final FrontierSearch frontierSearch;
+
+    /* null when not known for this version
+     */
+    final ComponentIndex components;
+    final LandmarkIndex landmarks;
+
+    GraphVersion(ArticleIndex articles, Adjacency links, Adjacency backlinks,
+            ComponentIndex components, LandmarkIndex landmarks) {
+        this.articles = articles;
+        this.links = links;
+        this.backlinks = backlinks;
+        this.frontierSearch = new FrontierSearch(links, backlinks);
+        this.components = components;
+        this.landmarks = landmarks;
+    }
+
+    /**
+     * @param s a vertex (or a negative number, for none)
+     * @param t a vertex (or a negative number, for none)
+     * @return false if there is certainly no path from s to t
+     */
+    boolean mayReach(int s, int t) {
+        return components == null ? s >= 0 && t >= 0 : components.mayReach(s, t);
+    }
+
+    /**
+     * @return whether this version's component index covers every article
+     */
+    boolean indexed() {
+        return components != null && components.vertexCount() == links.vertexCount();
+    }
+
+    GraphVersion withLandmarks(LandmarkIndex index) {
+        return new GraphVersion(articles, links, backlinks, components, index);
+    }
+
+    /**
+     * @param article the name of an article
+     * @return this version with the article added (with no links), or this
+     *      version itself if there already is such an article
+     */
+    GraphVersion withArticle(String article) {
+        return articles.id(article) >= 0 ? this : new GraphVersion(
+            DeltaArticles.over(articles).with(article),
+            DeltaGraph.over(links).withVertex(),
+            DeltaGraph.over(backlinks).withVertex(),
+            components,
+            null);
+    }
+
+    /**
+     * @param from a vertex
+     * @param to a vertex
+     * @return this version with a link from from to to, or this version itself
+     *      if there already is one
+     */
+    GraphVersion withLink(int from, int to) {
+        final DeltaGraph before = DeltaGraph.over(links);
+        final DeltaGraph added = before.withEdge(from, to);
+        if (added == before) {
+            return this;
+        }
+        final boolean connected = components != null
+            && Math.max(from, to) < components.vertexCount()
+            && components.component(from) == components.component(to);
+        return new GraphVersion(articles, added, DeltaGraph.over(backlinks).withEdge(to, from),
+            connected ? components : null, null);
+    }
+
+    /**
+     * @param from a vertex
+     * @param to a vertex
+     * @return this version without the link from from to to, or this version
+     *      itself if there is no such link
+     */
+    GraphVersion withoutLink(int from, int to) {
+        final DeltaGraph before = DeltaGraph.over(links);
+        final DeltaGraph removed = before.withoutEdge(from, to);
+        return removed == before ? this : new GraphVersion(articles, removed,
+            DeltaGraph.over(backlinks).withoutEdge(to, from), components, null);
+    }
+
+    /**
+     * @return how many changes (overlaid neighbor lists and added articles)
+     *      this version has on top of its frozen base
+     */
+    int pending() {
+        return (links instanceof DeltaGraph ? ((DeltaGraph) links).overlaid() : 0)
+            + (backlinks instanceof DeltaGraph ? ((DeltaGraph) backlinks).overlaid() : 0)
+            + (articles instanceof DeltaArticles ? ((DeltaArticles) articles).added() : 0);
+    }
+
+    /**
+     * Merges any changes into frozen arrays (compressed again, if they were
+     * compressed), and builds the indexes for the result. Takes time in
+     * proportion to the whole graph.
+     * @param landmarkVertices the landmarks to index, or null for none
+     * @return a version with the same graph as this one, and no changes pending
+     */
+    GraphVersion compacted(int[] landmarkVertices) {
+        final ArticleIndex frozenArticles = articles instanceof DeltaArticles
+            ? ((DeltaArticles) articles).compact() : articles;
+        final Adjacency frozenLinks = freeze(links);
+        final Adjacency frozenBacklinks = freeze(backlinks);
+        return new GraphVersion(frozenArticles, frozenLinks, frozenBacklinks,
+            frozenLinks == links && components != null ? components : ComponentIndex.build(frozenLinks),
+            landmarkVertices == null ? null : frozenLinks == links && landmarks != null ? landmarks
+                : LandmarkIndex.build(frozenLinks, frozenBacklinks, landmarkVertices));
+    }
+
+    /* graph with its overlay (if any) merged into its base. A compressed base
+     * is compressed again straight from the overlaid graph, without ever
+     * being expanded into int arrays.
+     */
+    private static Adjacency freeze(Adjacency graph) {
+        if (!(graph instanceof DeltaGraph)) {
+            return graph;
+        }
+        final DeltaGraph delta = (DeltaGraph) graph;
+        return delta.base() instanceof CompressedGraph
+            ? CompressedGraph.compress(delta, ((CompressedGraph) delta.base()).window())
+            : delta.compact();
+    }
+}
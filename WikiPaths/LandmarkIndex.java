@@ -0,0 +1,273 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed distances to and from a few 'landmark' vertices, which bound
+ * the distance between any two vertices in O(landmarks) time (the 'ALT'
+ * technique of Goldberg and Harrelson).
+ *
+ * By the triangle inequality, for a landmark L and vertices s and t,
+ *
+ *      d(L, t) - d(L, s)  <=  d(s, t)  <=  d(s, L) + d(L, t)
+ *      d(s, L) - d(t, L)  <=  d(s, t)
+ *
+ * and if L reaches s but not t (or t reaches L but s does not), then s
+ * cannot reach t at all. The best of these over all landmarks are the
+ * bounds. The lower bound is also a consistent A* heuristic, which is how
+ * SearchContext.guidedPath uses it.
+ *
+ * Distances are stored as unsigned bytes, interleaved so that the k bytes
+ * for one vertex are adjacent: from[v * k + i] is d(landmark i, v), and
+ * to[v * k + i] is d(v, landmark i). UNREACHABLE means there is no path,
+ * and FAR means the distance is at least FAR.
+ */
+final class LandmarkIndex {
+
+    /* "WPLM", for WikiPaths landmarks, and the version of the file layout
+     * written by save()
+     */
+    static final int MAGIC = 0x57504c4d;
+    static final int VERSION = 1;
+
+    private static final int UNREACHABLE = 255;
+    private static final int FAR = 254;
+
+    private final int[] landmarks;
+    private final byte[] from;
+    private final byte[] to;
+
+    private LandmarkIndex(int[] landmarks, byte[] from, byte[] to) {
+        this.landmarks = landmarks;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Chooses landmarks and finds every vertex's distance to and from them,
+     * with two parallel breadth-first searches per landmark.
+     * @param links the graph
+     * @param backlinks links.reverse()
+     * @param count how many landmarks to choose
+     * @param farthest if true, each landmark after the first is the vertex worst
+     *      covered by the landmarks so far (the one farthest from and to them).
+     *      If false, the landmarks are the vertices with the most links.
+     * @return the index
+     */
+    static LandmarkIndex build(Adjacency links, Adjacency backlinks, int count, boolean farthest) {
+        final int vertices = links.vertexCount();
+        final int k = Math.min(count, vertices);
+        final FrontierSearch forwards = new FrontierSearch(links, backlinks);
+        final FrontierSearch backwards = new FrontierSearch(backlinks, links);
+
+        // Vertices with no links at all are no use as landmarks
+        final int[] degree = IntStream.range(0, vertices)
+            .map(v -> links.degree(v) + backlinks.degree(v))
+            .toArray();
+
+        final int[] landmarks = new int[k];
+        final byte[] from = new byte[Math.multiplyExact(vertices, k)];
+        final byte[] to = new byte[vertices * k];
+
+        // For farthest-point selection: how well each vertex is covered by
+        // the landmarks so far (smaller is worse)
+        final int[] cover = new int[vertices];
+        Arrays.fill(cover, Integer.MAX_VALUE);
+
+        final int[] byDegree = IntStream.range(0, vertices).boxed()
+            .sorted((a, b) -> Integer.compare(degree[b], degree[a]))
+            .mapToInt(x -> x)
+            .toArray();
+
+        for (int i = 0; i < k; i++) {
+            if (!farthest || i == 0) {
+                landmarks[i] = byDegree[i];
+            } else {
+                int best = landmarks[0];
+                for (int v = 0; v < vertices; v++) {
+                    if (degree[v] > 0 && (cover[v] > cover[best]
+                            || cover[v] == cover[best] && degree[v] > degree[best])) {
+                        best = v;
+                    }
+                }
+                landmarks[i] = best;
+            }
+
+            final int[] distancesFrom = forwards.distancesFrom(landmarks[i]);
+            final int[] distancesTo = backwards.distancesFrom(landmarks[i]);
+            for (int v = 0; v < vertices; v++) {
+                from[v * k + i] = squeeze(distancesFrom[v]);
+                to[v * k + i] = squeeze(distancesTo[v]);
+
+                // A landmark is poor cover for whatever it cannot reach, or
+                // be reached from
+                final int round = (distancesFrom[v] < 0 ? 2 * UNREACHABLE : distancesFrom[v])
+                    + (distancesTo[v] < 0 ? 2 * UNREACHABLE : distancesTo[v]);
+                cover[v] = Math.min(cover[v], round);
+            }
+        }
+        return new LandmarkIndex(landmarks, from, to);
+    }
+
+    /**
+     * Finds every vertex's distance to and from the given landmarks, as when
+     * they were first chosen by build(Adjacency, Adjacency, int, boolean). For
+     * rebuilding an index after the graph has changed.
+     * @param links the graph
+     * @param backlinks links.reverse()
+     * @param landmarks the landmark vertices
+     * @return the index
+     */
+    static LandmarkIndex build(Adjacency links, Adjacency backlinks, int[] landmarks) {
+        final int vertices = links.vertexCount();
+        final int k = landmarks.length;
+        final FrontierSearch forwards = new FrontierSearch(links, backlinks);
+        final FrontierSearch backwards = new FrontierSearch(backlinks, links);
+        final byte[] from = new byte[Math.multiplyExact(vertices, k)];
+        final byte[] to = new byte[vertices * k];
+        for (int i = 0; i < k; i++) {
+            final int[] distancesFrom = forwards.distancesFrom(landmarks[i]);
+            final int[] distancesTo = backwards.distancesFrom(landmarks[i]);
+            for (int v = 0; v < vertices; v++) {
+                from[v * k + i] = squeeze(distancesFrom[v]);
+                to[v * k + i] = squeeze(distancesTo[v]);
+            }
+        }
+        return new LandmarkIndex(landmarks.clone(), from, to);
+    }
+
+    private static byte squeeze(int distance) {
+        return (byte) (distance < 0 ? UNREACHABLE : Math.min(distance, FAR));
+    }
+
+    /**
+     * @param s a vertex
+     * @param t a vertex
+     * @return a lower bound on the distance from s to t, or -1 if there is
+     *      certainly no path from s to t
+     */
+    int lower(int s, int t) {
+        if (s == t) {
+            return 0;
+        }
+        final int k = landmarks.length;
+        int best = 0;
+        for (int i = 0; i < k; i++) {
+            final int fs = from[s * k + i] & 0xff;
+            final int ft = from[t * k + i] & 0xff;
+            final int ts = to[s * k + i] & 0xff;
+            final int tt = to[t * k + i] & 0xff;
+            if (fs != UNREACHABLE && ft == UNREACHABLE || tt != UNREACHABLE && ts == UNREACHABLE) {
+                return -1;
+            }
+            if (fs < FAR && ft != UNREACHABLE) {
+                best = Math.max(best, ft - fs);
+            }
+            if (tt < FAR && ts != UNREACHABLE) {
+                best = Math.max(best, ts - tt);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param s a vertex
+     * @param t a vertex
+     * @return an upper bound on the distance from s to t, or Integer.MAX_VALUE
+     *      if no landmark gives one
+     */
+    int upper(int s, int t) {
+        if (s == t) {
+            return 0;
+        }
+        final int k = landmarks.length;
+        int best = Integer.MAX_VALUE;
+        for (int i = 0; i < k; i++) {
+            final int ts = to[s * k + i] & 0xff;
+            final int ft = from[t * k + i] & 0xff;
+            if (ts < FAR && ft < FAR) {
+                best = Math.min(best, ts + ft);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the landmark vertices
+     */
+    int[] landmarks() {
+        return landmarks.clone();
+    }
+
+    /**
+     * Writes this index to a file, to be read back with load(). Vertices are
+     * written by position in the vertex file rather than by id, so that the
+     * file works for the same graph however its vertices are numbered.
+     * @param file name of the file to (over)write
+     * @param order how the graph's vertices are numbered
+     * @throws IOException if the file cannot be written
+     */
+    void save(String file, VertexOrder order) throws IOException {
+        final int k = landmarks.length;
+        final int vertices = from.length / Math.max(1, k);
+        final int[] positions = order.positions(vertices);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(vertices);
+            out.writeInt(k);
+            for (int landmark : landmarks) {
+                out.writeInt(positions[landmark]);
+            }
+            for (int p = 0; p < vertices; p++) {
+                out.write(from, order.id(p) * k, k);
+            }
+            for (int p = 0; p < vertices; p++) {
+                out.write(to, order.id(p) * k, k);
+            }
+        }
+    }
+
+    /**
+     * Reads an index written by save().
+     * @param file name of the file
+     * @param vertices the number of vertices in the graph the index is for
+     * @param order how the graph's vertices are numbered
+     * @return the index
+     * @throws IOException if the file cannot be read, or is for another graph
+     */
+    static LandmarkIndex load(String file, int vertices, VertexOrder order) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a version " + VERSION + " landmark index");
+            }
+            final int count = in.readInt();
+            final int k = in.readInt();
+            if (k > 0 && count != vertices) {
+                throw new IOException(file + " is for a graph with " + count
+                    + " vertices, not " + vertices);
+            }
+            final int[] landmarks = new int[k];
+            for (int i = 0; i < k; i++) {
+                landmarks[i] = order.id(in.readInt());
+            }
+            final byte[] from = new byte[Math.multiplyExact(vertices, k)];
+            final byte[] to = new byte[vertices * k];
+            for (int p = 0; p < vertices; p++) {
+                in.readFully(from, order.id(p) * k, k);
+            }
+            for (int p = 0; p < vertices; p++) {
+                in.readFully(to, order.id(p) * k, k);
+            }
+            return new LandmarkIndex(landmarks, from, to);
+        }
+    }
+}
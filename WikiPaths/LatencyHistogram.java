@@ -0,0 +1,133 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative longs (normally nanoseconds) with a fixed
+ * relative precision over the whole range, laid out the way HdrHistogram
+ * does it: values below 2 * SUB each have a bucket of their own, and above
+ * that, every power of two is split into SUB equal buckets. So any recorded
+ * value is known to within 1 / SUB (about 3%), in under 2000 counters,
+ * whether it is a microsecond or an hour.
+ *
+ * Recording is a few shifts and one atomic increment, and never blocks, so
+ * any number of threads can record into one histogram at once. Reading it
+ * while they do gives a slightly blurred, but never corrupt, picture.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+
+    /* Enough buckets for Long.MAX_VALUE, whose top bit is bit 62
+     */
+    private static final int BUCKETS = (62 - SUB_BITS) * SUB + 2 * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value.
+     * @param value the value, where negative values count as 0
+     */
+    public void record(long value) {
+        final long v = Math.max(0, value);
+        counts.incrementAndGet(bucket(v));
+        total.incrementAndGet();
+        sum.addAndGet(v);
+        for (long old = max.get(); v > old && !max.compareAndSet(old, v); old = max.get()) {
+            // Lost a race with another thread's maximum; try again
+        }
+    }
+
+    /**
+     * @return how many values have been recorded
+     */
+    public long count() {
+        return total.get();
+    }
+
+    /**
+     * @return the largest value recorded (exactly), or 0 if there are none
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the values recorded (exactly), or 0 if there are none
+     */
+    public double mean() {
+        final long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return a value that at least that percent of recorded values are no more
+     *      than (the top of the bucket holding that percentile), or 0 if there
+     *      are none
+     */
+    public long percentile(double percentile) {
+        final long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets every value recorded so far.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /* Which bucket v goes in
+     */
+    private static int bucket(long v) {
+        if (v < 2 * SUB) {
+            return (int) v;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return shift * SUB + (int) (v >>> shift);
+    }
+
+    /* The largest value that goes in bucket i
+     */
+    private static long highest(int i) {
+        if (i < 2 * SUB) {
+            return i;
+        }
+        final int shift = i / SUB - 1;
+        final long top = (long) (i % SUB + SUB + 1) << shift;
+        return top - 1 < 0 ? Long.MAX_VALUE : top - 1;
+    }
+
+    /**
+     * @return the count, mean, median, 90th, 99th and 99.9th percentiles and
+     *      maximum, taking values to be nanoseconds and showing microseconds
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+            "n=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+            count(), mean() / 1e3, percentile(50) / 1e3, percentile(90) / 1e3,
+            percentile(99) / 1e3, percentile(99.9) / 1e3, max() / 1e3);
+    }
+}
@@ -0,0 +1,222 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * A graph that can change while it is being searched.
+ *
+ * Readers call current() and get an immutable GraphVersion, which stays the
+ * same however long they use it: a reader never takes a lock, never waits,
+ * and never sees half of a change. Writers take turns (on this object's
+ * monitor) making a new version from the current one, and publish it with a
+ * single atomic swap. A change only copies a small part of the overlay on
+ * top of the version's frozen arrays (see DeltaGraph), so its cost doesn't
+ * depend on how large the graph is, and grows only with the square root of
+ * how many changes are pending.
+ *
+ * Once the overlay passes a threshold, a background thread merges it back
+ * into frozen arrays and rebuilds the indexes the changes dropped (see
+ * GraphVersion). That takes a while, and changes keep being made in the
+ * meantime, so each change is also logged as a function from one version
+ * to the next. When the merge is done, the changes made since it started
+ * are replayed on top of it, and the result replaces the current version.
+ *
+ * Changes that could connect two components drop the component index (see
+ * GraphVersion), so queries that need one (see indexed()) are answered from
+ * the latest version that had one, which is a consistent graph, if perhaps
+ * a few changes behind. Readers never compact, and only ever wait for the
+ * very first index.
+ */
+final class LiveGraph {
+
+    /* Changes pending before a compaction is started, at the least. Larger
+     * graphs wait for proportionally more, so that compaction's cost per
+     * change stays about the same.
+     */
+    private static final int THRESHOLD = 4096;
+
+    private final AtomicReference<GraphVersion> current;
+
+    /* The latest version whose component index covers all of it, or null
+     * until there is one. firstIndex opens once there is.
+     */
+    private final AtomicReference<GraphVersion> indexed = new AtomicReference<GraphVersion>();
+    private final CountDownLatch firstIndex = new CountDownLatch(1);
+
+    /* Called after every change is published (but not after compaction,
+     * which changes nothing a reader can see)
+     */
+    private final Runnable onChange;
+
+    /* Every change since the current version's frozen base was made. Guarded
+     * by this object's monitor, as are the fields below.
+     */
+    private final List<UnaryOperator<GraphVersion>> log = new ArrayList<UnaryOperator<GraphVersion>>();
+
+    /* The landmarks to index at each compaction, or null for none
+     */
+    private int[] landmarkVertices;
+
+    private boolean compacting;
+
+    /* Compactions run here, one at a time, on a daemon thread (so that they
+     * never keep the program alive)
+     */
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(task -> {
+        final Thread thread = new Thread(task, "graph-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param initial the graph to start with. If it has no component index, one
+     *      is built in the background.
+     * @param onChange called after every change
+     */
+    LiveGraph(GraphVersion initial, Runnable onChange) {
+        this.current = new AtomicReference<GraphVersion>(initial);
+        this.onChange = onChange;
+        if (initial.indexed()) {
+            indexed.set(initial);
+            firstIndex.countDown();
+        } else {
+            compactLater();
+        }
+    }
+
+    /**
+     * @return the current version of the graph
+     */
+    GraphVersion current() {
+        return current.get();
+    }
+
+    /**
+     * Makes a change, and publishes the result.
+     * @param change makes the next version from the current one, returning the
+     *      same version if there is nothing to change
+     * @return whether anything changed
+     */
+    synchronized boolean change(UnaryOperator<GraphVersion> change) {
+        final GraphVersion before = current.get();
+        final GraphVersion after = change.apply(before);
+        if (after != before) {
+            log.add(change);
+            publish(after);
+            onChange.run();
+            if (after.pending() >= Math.max(THRESHOLD, after.links.vertexCount() >> 10)) {
+                compactLater();
+            }
+        }
+        return after != before;
+    }
+
+    /**
+     * Never compacts, and only waits if no version has had an index yet (for
+     * the compaction that builds the first one, which starts with this graph).
+     * If the current version has no index, one is built in the background.
+     * @return the latest version with a component index that covers all of it:
+     *      the current version, or one from a few changes before it
+     */
+    GraphVersion indexed() {
+        if (!current.get().indexed()) {
+            compactLater();
+        }
+        try {
+            firstIndex.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for the component index", e);
+        }
+        return indexed.get();
+    }
+
+    /* Makes version the current one (and the latest indexed one, if it is).
+     * Called holding this object's monitor.
+     */
+    private void publish(GraphVersion version) {
+        current.set(version);
+        if (version.indexed()) {
+            indexed.set(version);
+            firstIndex.countDown();
+        }
+    }
+
+    /**
+     * Replaces the current version's landmarks, and keeps using the same ones
+     * (re-indexed) after later compactions.
+     * @param version the version index was built for
+     * @param index the landmark index
+     */
+    synchronized void useLandmarks(GraphVersion version, LandmarkIndex index) {
+        landmarkVertices = index.landmarks();
+        final GraphVersion latest = current.get();
+        if (latest.links == version.links) {
+            publish(latest.withLandmarks(index));
+        } else {
+            // Too late for this version, so it's built again for the next
+            compactLater();
+        }
+    }
+
+    /**
+     * Merges all pending changes into frozen arrays, and rebuilds the indexes,
+     * on the calling thread. Changes made meanwhile are not held up, and are
+     * kept (though they may leave a few changes pending afterwards).
+     */
+    void compact() {
+        synchronized (compactor) {
+            final GraphVersion base;
+            final GraphVersion indexedBefore;
+            final int replayed;
+            final int[] landmarks;
+            synchronized (this) {
+                base = current.get();
+                indexedBefore = indexed.get();
+                replayed = log.size();
+                landmarks = landmarkVertices;
+            }
+
+            // The slow part, while readers and writers carry on
+            final GraphVersion compacted = base.compacted(landmarks);
+
+            synchronized (this) {
+                final List<UnaryOperator<GraphVersion>> later =
+                    new ArrayList<UnaryOperator<GraphVersion>>(log.subList(replayed, log.size()));
+                GraphVersion version = compacted;
+                for (UnaryOperator<GraphVersion> change : later) {
+                    version = change.apply(version);
+                }
+                log.clear();
+                log.addAll(later);
+                publish(version);
+                if (!version.indexed() && indexed.get() == indexedBefore) {
+                    // The changes replayed dropped the index, but it is
+                    // right for the compacted graph, which is newer than
+                    // any other version that had one
+                    indexed.set(compacted);
+                    firstIndex.countDown();
+                }
+                compacting = false;
+
+                // Landmarks chosen while this ran were not in it
+                if (landmarkVertices != landmarks) {
+                    compactLater();
+                }
+            }
+        }
+    }
+
+    /* Starts a compaction in the background, unless one is already waiting
+     */
+    private synchronized void compactLater() {
+        if (!compacting) {
+            compacting = true;
+            compactor.execute(this::compact);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event for loading a graph from its vertex and edge files
+ * (see GraphLoader). Enable "wikipaths.Load" in a recording to get it.
+ */
+@Name("wikipaths.Load")
+@Label("Graph Load")
+@Category("WikiPaths")
+@Description("Reading a vertex file and an edge file into a graph")
+final class LoadEvent extends jdk.jfr.Event {
+
+    @Label("Vertex File")
+    String nodeFile;
+
+    @Label("Edge File")
+    String edgeFile;
+
+    @Label("Articles")
+    int articles;
+
+    @Label("Links")
+    @Description("Distinct links, after skipped lines and repeats")
+    long links;
+
+    @Label("Skipped Lines")
+    @Description("Malformed lines, and links to unknown articles")
+    long skipped;
+
+    @Label("Names Time")
+    @Description("Reading the vertex file")
+    @Timespan(Timespan.NANOSECONDS)
+    long namesTime;
+
+    @Label("Links Time")
+    @Description("Reading the edge file")
+    @Timespan(Timespan.NANOSECONDS)
+    long linksTime;
+
+    @Label("Freeze Time")
+    @Description("Building the forward and backward graphs")
+    @Timespan(Timespan.NANOSECONDS)
+    long freezeTime;
+
+    @Label("CPU Time")
+    @Description("CPU time of the whole process while loading, across all threads")
+    @Timespan(Timespan.NANOSECONDS)
+    long cpuTime;
+}
@@ -0,0 +1,76 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An ArticleIndex read straight out of a GraphSnapshot's name sections: the
+ * UTF-8 bytes of every name back to back, where each one starts, and the ids
+ * sorted by name. Names are looked up by binary search over the sorted ids,
+ * so nothing has to be hashed (or even read) when the snapshot is opened.
+ */
+final class MappedArticles implements ArticleIndex {
+
+    /* The name of article i is bytes[offsets[i]] through bytes[offsets[i + 1] - 1]
+     */
+    private final ByteBuffer bytes;
+    private final IntBuffer offsets;
+
+    /* Every id, ordered by comparing names as unsigned bytes
+     */
+    private final IntBuffer order;
+
+    MappedArticles(ByteBuffer bytes, IntBuffer offsets, IntBuffer order) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.order = order;
+    }
+
+    @Override
+    public int size() {
+        return order.limit();
+    }
+
+    @Override
+    public int id(String article) {
+        final byte[] key = article.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int id = order.get(mid);
+            final int sign = compare(key, id);
+            if (sign == 0) {
+                return id;
+            } else if (sign < 0) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String name(int id) {
+        final int start = offsets.get(id);
+        final byte[] name = new byte[offsets.get(id + 1) - start];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = bytes.get(start + i);
+        }
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /* Compares key with the name of article id, byte by byte (unsigned)
+     */
+    private int compare(byte[] key, int id) {
+        final int start = offsets.get(id);
+        final int length = offsets.get(id + 1) - start;
+        for (int i = 0; i < key.length && i < length; i++) {
+            final int sign = (key[i] & 0xff) - (bytes.get(start + i) & 0xff);
+            if (sign != 0) {
+                return sign;
+            }
+        }
+        return key.length - length;
+    }
+}
@@ -0,0 +1,80 @@
+import java.nio.IntBuffer;
+import java.util.function.IntConsumer;
+
+/**
+ * A graph in the same compressed-sparse-row layout as CompactGraph, but read
+ * straight out of buffers (normally, read-only maps of a GraphSnapshot file)
+ * rather than heap arrays. Nothing is copied, so opening one costs nothing
+ * up front, and processes that map the same file share its pages.
+ */
+public final class MappedGraph implements Adjacency {
+
+    /* Same meaning as in CompactGraph
+     */
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+
+    MappedGraph(IntBuffer offsets, IntBuffer targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    @Override
+    public int vertexCount() {
+        return offsets.limit() - 1;
+    }
+
+    @Override
+    public long edgeCount() {
+        return targets.limit();
+    }
+
+    @Override
+    public int degree(int v) {
+        return offsets.get(v + 1) - offsets.get(v);
+    }
+
+    @Override
+    public void forEachNeighbor(int v, IntConsumer action) {
+        final int end = offsets.get(v + 1);
+        for (int i = offsets.get(v); i < end; i++) {
+            action.accept(targets.get(i));
+        }
+    }
+
+    /**
+     * Direct access to the buffers, as in CompactGraph.firstEdge().
+     * @param v a vertex, or vertexCount() for the end of the last slice
+     * @return the index of v's first edge
+     */
+    public int firstEdge(int v) {
+        return offsets.get(v);
+    }
+
+    /**
+     * @param e an edge index, as produced by firstEdge()
+     * @return the vertex that e points to
+     */
+    public int target(int e) {
+        return targets.get(e);
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Cursor() {
+            private int next;
+            private int end;
+
+            @Override
+            public void reset(int v) {
+                next = offsets.get(v);
+                end = offsets.get(v + 1);
+            }
+
+            @Override
+            public int next() {
+                return next < end ? targets.get(next++) : -1;
+            }
+        };
+    }
+}
@@ -0,0 +1,278 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Breadth-first searches from many sources at once, for questions about the
+ * whole graph (how far apart articles typically are, how far the farthest
+ * are) rather than about one pair.
+ *
+ * Up to 64 searches run together (Then et al., "The More the Merrier:
+ * Efficient Multi-Source Graph Traversal"). Every vertex has one long each
+ * for which of the searches have seen it, which have it in their current
+ * frontier, and which will have it in the next one, so a vertex (and its
+ * neighbor list) is handled once per level for all 64 searches together,
+ * rather than once per search. Low-diameter graphs like wikipedia's are
+ * where this pays most: the 64 searches reach the same hubs at almost the
+ * same levels, so their frontiers overlap almost entirely.
+ *
+ * Levels are expanded one of two ways, switching on the same sizes as
+ * FrontierSearch does:
+ *
+ *  - top-down, while the frontiers are small: each frontier vertex passes its
+ *    bits on to its neighbors. This runs on one thread, since neighbors are
+ *    shared between vertices, but it is only used while it is cheap.
+ *  - bottom-up, once they are not: each vertex that some search hasn't seen
+ *    yet collects the frontier bits of its backlinks, stopping as soon as
+ *    every search that was missing it has found it. Each vertex only writes
+ *    its own words, so blocks of vertices are expanded in parallel, on
+ *    every core.
+ *
+ * The bookkeeping is three longs per vertex (for wikipedia, about 150MB),
+ * allocated once and reused for every group of 64 sources.
+ */
+final class MultiSourceSearch {
+
+    /* Searches per group: the bits in a long
+     */
+    static final int WIDTH = 64;
+
+    /* Vertices per parallel task
+     */
+    private static final int BLOCK = 4096;
+
+    /* Switching thresholds (see FrontierSearch)
+     */
+    private static final int ALPHA = 14;
+    private static final int BETA = 24;
+
+    private final Adjacency links;
+    private final Adjacency backlinks;
+    private final ComponentIndex components;
+    private final int vertices;
+    private final int core;
+
+    private final long[] seen;
+    private long[] frontier;
+    private long[] next;
+
+    /**
+     * @param links the graph to search
+     * @param backlinks links.reverse()
+     * @param components the strongly connected components of links
+     */
+    MultiSourceSearch(Adjacency links, Adjacency backlinks, ComponentIndex components) {
+        this.links = links;
+        this.backlinks = backlinks;
+        this.components = components;
+        this.vertices = links.vertexCount();
+        this.seen = new long[vertices];
+        this.frontier = new long[vertices];
+        this.next = new long[vertices];
+
+        // The largest component, which for wikipedia-like graphs holds most
+        // of the articles
+        int largest = 0;
+        for (int c = 1; c < components.count(); c++) {
+            if (components.size(c) > components.size(largest)) {
+                largest = c;
+            }
+        }
+        this.core = components.count() == 0 ? -1 : largest;
+    }
+
+    /**
+     * Searches from every source, forwards, and from the ones in the largest
+     * component backwards as well (to bound its diameter from above).
+     * @param sources the vertices to search from
+     * @param articles the names of the vertices
+     * @return what the searches found
+     */
+    DistanceProfile profile(int[] sources, ArticleIndex articles) {
+        final List<long[]> histogram = new ArrayList<long[]>();
+        final int[] eccentricity = new int[sources.length];
+        final int[] coreOut = new int[sources.length];
+        final int[] coreIn = new int[sources.length];
+        Arrays.fill(coreOut, -1);
+        Arrays.fill(coreIn, -1);
+
+        for (int from = 0; from < sources.length; from += WIDTH) {
+            final int[] group = Arrays.copyOfRange(sources, from, Math.min(sources.length, from + WIDTH));
+            final List<long[]> levels = run(group, links, backlinks);
+            for (int level = 0; level < levels.size(); level++) {
+                if (histogram.size() == level) {
+                    histogram.add(new long[1]);
+                }
+                histogram.get(level)[0] += levels.get(level)[0];
+                for (long bits = levels.get(level)[1]; bits != 0; bits &= bits - 1) {
+                    eccentricity[from + Long.numberOfTrailingZeros(bits)] = level;
+                }
+                for (long bits = levels.get(level)[2]; bits != 0; bits &= bits - 1) {
+                    coreOut[from + Long.numberOfTrailingZeros(bits)] = level;
+                }
+            }
+        }
+
+        // Distances to the sources in the largest component, by searching
+        // backwards along the links. Sources outside it are left out, since
+        // they can only bound it from below.
+        final int[] inCore = IntStream.range(0, sources.length)
+            .filter(i -> components.component(sources[i]) == core)
+            .toArray();
+        for (int from = 0; from < inCore.length; from += WIDTH) {
+            final int[] group = new int[Math.min(inCore.length, from + WIDTH) - from];
+            for (int i = 0; i < group.length; i++) {
+                group[i] = sources[inCore[from + i]];
+            }
+            final List<long[]> levels = run(group, backlinks, links);
+            for (int level = 0; level < levels.size(); level++) {
+                for (long bits = levels.get(level)[2]; bits != 0; bits &= bits - 1) {
+                    coreIn[inCore[from + Long.numberOfTrailingZeros(bits)]] = level;
+                }
+            }
+        }
+
+        final List<String> names = new ArrayList<String>(sources.length);
+        for (int source : sources) {
+            names.add(articles.name(source));
+        }
+        final long[] counts = new long[histogram.size()];
+        for (int d = 0; d < counts.length; d++) {
+            counts[d] = histogram.get(d)[0];
+        }
+        return new DistanceProfile(names, vertices, counts, eccentricity, coreOut, coreIn,
+            core < 0 ? 0 : components.size(core));
+    }
+
+    /* Searches from every source in group (at most 64) at once, taking out
+     * to lead from a vertex to its neighbors and in to be its reverse. For
+     * each level, returns how many (source, vertex) pairs are that far apart,
+     * which sources reached anything at that level, and which reached
+     * anything in the largest component.
+     */
+    private List<long[]> run(int[] group, Adjacency out, Adjacency in) {
+        final long everyone = group.length == WIDTH ? -1L : (1L << group.length) - 1;
+        final int blocks = (vertices + BLOCK - 1) / BLOCK;
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            final int end = Math.min(vertices, (block + 1) * BLOCK);
+            Arrays.fill(seen, block * BLOCK, end, 0);
+            Arrays.fill(frontier, block * BLOCK, end, 0);
+            Arrays.fill(next, block * BLOCK, end, 0);
+        });
+
+        long any = 0;
+        long inCore = 0;
+        long frontierEdges = 0;
+        for (int i = 0; i < group.length; i++) {
+            seen[group[i]] |= 1L << i;
+            frontier[group[i]] |= 1L << i;
+            any |= 1L << i;
+            inCore |= components.component(group[i]) == core ? 1L << i : 0;
+            frontierEdges += out.degree(group[i]);
+        }
+        final List<long[]> levels = new ArrayList<long[]>();
+        levels.add(new long[] { group.length, any, inCore });
+
+        long frontierVertices = group.length;
+        boolean bottomUp = false;
+        while (frontierVertices > 0) {
+            if (!bottomUp && frontierEdges > out.edgeCount() / ALPHA) {
+                bottomUp = true;
+            } else if (bottomUp && frontierVertices < vertices / BETA) {
+                bottomUp = false;
+            }
+
+            if (bottomUp) {
+                IntStream.range(0, blocks).parallel().forEach(block -> bottomUpStep(block, in, everyone));
+            } else {
+                topDownStep(out);
+            }
+
+            // Tally the new frontier, clearing the old one on the way, so that
+            // it can be the next one
+            final long[] tallies = IntStream.range(0, blocks).parallel()
+                .mapToObj(block -> tally(block, out))
+                .reduce(new long[5], (a, b) -> new long[] {
+                    a[0] + b[0], a[1] | b[1], a[2] | b[2], a[3] + b[3], a[4] + b[4] });
+            if (tallies[0] > 0) {
+                levels.add(new long[] { tallies[0], tallies[1], tallies[2] });
+            }
+            frontierVertices = tallies[3];
+            frontierEdges = tallies[4];
+
+            final long[] current = frontier;
+            frontier = next;
+            next = current;
+        }
+        return levels;
+    }
+
+    /* Passes every frontier vertex's bits on to its neighbors, for the
+     * searches that haven't seen them yet
+     */
+    private void topDownStep(Adjacency out) {
+        final Adjacency.Cursor neighbors = out.cursor();
+        for (int v = 0; v < vertices; v++) {
+            final long bits = frontier[v];
+            if (bits == 0) {
+                continue;
+            }
+            neighbors.reset(v);
+            for (int n = neighbors.next(); n >= 0; n = neighbors.next()) {
+                final long found = bits & ~seen[n];
+                if (found != 0) {
+                    next[n] |= found;
+                    seen[n] |= found;
+                }
+            }
+        }
+    }
+
+    /* Collects, for each vertex in one block, the frontier bits of its
+     * backlinks, for the searches that haven't seen it yet
+     */
+    private void bottomUpStep(int block, Adjacency in, long everyone) {
+        final Adjacency.Cursor inLinks = in.cursor();
+        for (int v = block * BLOCK; v < Math.min(vertices, (block + 1) * BLOCK); v++) {
+            final long missing = everyone & ~seen[v];
+            if (missing == 0) {
+                continue;
+            }
+            long found = 0;
+            inLinks.reset(v);
+            for (int u = inLinks.next(); u >= 0 && (found & missing) != missing; u = inLinks.next()) {
+                found |= frontier[u];
+            }
+            found &= missing;
+            if (found != 0) {
+                next[v] = found;
+                seen[v] |= found;
+            }
+        }
+    }
+
+    /* For one block of the new frontier: the (source, vertex) pairs in it,
+     * which sources have any vertex in it, and any in the largest component,
+     * and its vertices and their edges. Clears the block of the old frontier.
+     */
+    private long[] tally(int block, Adjacency out) {
+        long pairs = 0;
+        long any = 0;
+        long inCore = 0;
+        long vertices = 0;
+        long edges = 0;
+        for (int v = block * BLOCK; v < Math.min(this.vertices, (block + 1) * BLOCK); v++) {
+            frontier[v] = 0;
+            final long bits = next[v];
+            if (bits != 0) {
+                pairs += Long.bitCount(bits);
+                any |= bits;
+                inCore |= components.component(v) == core ? bits : 0;
+                vertices++;
+                edges += out.degree(v);
+            }
+        }
+        return new long[] { pairs, any, inCore, vertices, edges };
+    }
+}
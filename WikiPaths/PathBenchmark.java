@@ -0,0 +1,256 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Measures PathFinder on a generated graph (see GraphGenerator), and writes
+ * the results to a file, one measurement per line, so that the files from two
+ * versions of the code can be diffed.
+ *
+ * Measured, on a graph of the given size and seed:
+ *
+ *  - load: how long the constructor takes, best and median of a few runs
+ *  - memory: heap retained by a loaded PathFinder, per link line
+ *  - travel latency (getShortestPath) for near pairs (1 or 2 links apart), far
+ *    pairs (as far apart as the pair's start reaches), and unreachable pairs
+ *  - travelThrough latency (getShortestPath with an intermediate node), from
+ *    the start of a near pair, through its end, to the end of a far pair
+ *  - for each VertexOrdering: how long loading takes with it, and how fast
+ *    whole-graph searches (getShortestPathLengths) and far travel are with
+ *    it, as times and as speedups over vertex file order
+ *  - the same for compressed links (see CompressedGraph), in BFS order, and
+ *    the heap they take up
+ *
+ * Every latency is measured per query, after a warm-up pass over the same
+ * queries, and reported as its mean and 50th, 90th and 99th percentiles.
+ * Pairs are picked with a seeded Random, from the distances that a few
+ * whole-graph searches find, so the same arguments always measure the same
+ * queries.
+ *
+ * Run it with a large heap, and nothing else running:
+ *
+ *      java -Xmx8g PathBenchmark 1000000 20 1 results.tsv
+ */
+public final class PathBenchmark {
+
+    /* Queries per kind of pair, and loads to time
+     */
+    private static final int QUERIES = 1000;
+    private static final int LOADS = 3;
+
+    /* Whole-graph searches whose results the pairs are picked from
+     */
+    private static final int SOURCES = 8;
+
+    /* Whole-graph searches timed per ordering
+     */
+    private static final int SEARCHES = 20;
+
+    private PathBenchmark() {}
+
+    /**
+     * @param args the number of articles, the average number of links per article,
+     *      the seed, and the results file to (over)write
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.out.println("Usage: PathBenchmark <articles> <average links> <seed> <results file>");
+            return;
+        }
+        final int vertices = Integer.parseInt(args[0]);
+        final double averageLinks = Double.parseDouble(args[1]);
+        final long seed = Long.parseLong(args[2]);
+
+        final File vertexFile = File.createTempFile("benchmark", ".vertices");
+        final File edgeFile = File.createTempFile("benchmark", ".edges");
+        vertexFile.deleteOnExit();
+        edgeFile.deleteOnExit();
+        final long links = GraphGenerator.generate(vertices, averageLinks, seed,
+            vertexFile.getPath(), edgeFile.getPath());
+
+        final List<String> results = new ArrayList<String>();
+        results.add("# PathBenchmark " + vertices + " " + args[1] + " " + seed + " (" + links + " links), java "
+            + System.getProperty("java.version") + ", " + Runtime.getRuntime().availableProcessors() + " cpus");
+
+        // Load, and what's left on the heap afterwards
+        final long[] loads = new long[LOADS];
+        PathFinder finder = null;
+        for (int i = 0; i < LOADS; i++) {
+            finder = null;
+            final long before = usedHeap();
+            final long started = System.nanoTime();
+            finder = new PathFinder(vertexFile.getPath(), edgeFile.getPath());
+            loads[i] = System.nanoTime() - started;
+            if (i == LOADS - 1) {
+                final double bytes = usedHeap() - before;
+                results.add(line("memory", "bytes/link", bytes / Math.max(1, links)));
+                results.add(line("memory", "bytes", bytes));
+            }
+        }
+        Arrays.sort(loads);
+        results.add(line("load", "best ms", loads[0] / 1e6));
+        results.add(line("load", "median ms", loads[LOADS / 2] / 1e6));
+
+        final PathFinder paths = finder;
+        final Pairs pairs = Pairs.pick(paths, vertices, new Random(seed));
+        results.addAll(latency("travel near", QUERIES,
+            i -> paths.getShortestPath(pairs.near[i][0], pairs.near[i][1])));
+        results.addAll(latency("travel far", QUERIES,
+            i -> paths.getShortestPath(pairs.far[i][0], pairs.far[i][1])));
+        results.addAll(latency("travel unreachable", pairs.unreachable.length,
+            i -> paths.getShortestPath(pairs.unreachable[i][0], pairs.unreachable[i][1])));
+        results.addAll(latency("travelThrough", QUERIES,
+            i -> paths.getShortestPath(pairs.near[i][0], pairs.near[i][1], pairs.far[i][1])));
+
+        results.addAll(orderings(vertexFile.getPath(), edgeFile.getPath(), vertices, pairs, new Random(seed)));
+
+        try (PrintWriter out = new PrintWriter(args[3], StandardCharsets.UTF_8.name())) {
+            results.forEach(out::println);
+        }
+        results.forEach(System.out::println);
+    }
+
+    /* Loads the graph with each VertexOrdering in turn, and then compressed,
+     * and times the same whole-graph searches and far travel queries on each
+     */
+    private static List<String> orderings(String vertexFile, String edgeFile, int vertices,
+            Pairs pairs, Random random) {
+        final List<String> lines = new ArrayList<String>();
+        final String[] sources = random.ints(SEARCHES, 0, vertices)
+            .mapToObj(GraphGenerator::name)
+            .toArray(String[]::new);
+        double fileSearch = 0;
+        double fileTravel = 0;
+        for (int run = 0; run <= VertexOrdering.values().length; run++) {
+            final boolean compressed = run == VertexOrdering.values().length;
+            final VertexOrdering ordering = compressed ? VertexOrdering.BFS : VertexOrdering.values()[run];
+            final String name = compressed ? "compressed " + ordering : ordering.toString();
+            final long before = usedHeap();
+            final long started = System.nanoTime();
+            final PathFinder finder = new PathFinder(vertexFile, edgeFile, ordering, compressed);
+            lines.add(line("load " + name, "ms", (System.nanoTime() - started) / 1e6));
+            lines.add(line("memory " + name, "bytes", usedHeap() - before));
+
+            final double search = mean(time(SEARCHES, i -> finder.getShortestPathLengths(sources[i])));
+            final double travel = mean(time(QUERIES,
+                i -> finder.getShortestPath(pairs.far[i][0], pairs.far[i][1])));
+            if (ordering == VertexOrdering.FILE) {
+                fileSearch = search;
+                fileTravel = travel;
+            }
+            lines.add(line("search all " + name, "mean ms", search / 1e6));
+            lines.add(line("search all " + name, "speedup", fileSearch / search));
+            lines.add(line("travel far " + name, "mean us", travel / 1e3));
+            lines.add(line("travel far " + name, "speedup", fileTravel / travel));
+        }
+        return lines;
+    }
+
+    /* Runs query(0) through query(count - 1) twice (the first time to warm
+     * up), timing each the second time. Returns the times, sorted.
+     */
+    private static long[] time(int count, IntFunction<Object> query) {
+        for (int i = 0; i < count; i++) {
+            query.apply(i);
+        }
+        final long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            final long started = System.nanoTime();
+            query.apply(i);
+            times[i] = System.nanoTime() - started;
+        }
+        Arrays.sort(times);
+        return times;
+    }
+
+    private static double mean(long[] times) {
+        return (double) Arrays.stream(times).sum() / times.length;
+    }
+
+    /* The mean and percentiles of the times of query(0) through
+     * query(count - 1) (see time())
+     */
+    private static List<String> latency(String name, int count, IntFunction<Object> query) {
+        final List<String> lines = new ArrayList<String>();
+        if (count == 0) {
+            lines.add("# " + name + ": no such pairs");
+            return lines;
+        }
+        final long[] times = time(count, query);
+        lines.add(line(name, "mean us", mean(times) / 1e3));
+        lines.add(line(name, "p50 us", times[(int) (0.50 * (count - 1))] / 1e3));
+        lines.add(line(name, "p90 us", times[(int) (0.90 * (count - 1))] / 1e3));
+        lines.add(line(name, "p99 us", times[(int) (0.99 * (count - 1))] / 1e3));
+        return lines;
+    }
+
+    private static String line(String name, String metric, double value) {
+        return String.format(Locale.ROOT, "%s\t%s\t%.3f", name, metric, value);
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /* The queried pairs of article names, QUERIES of each kind (except for
+     * unreachable pairs, of which there may be fewer, or none)
+     */
+    private static final class Pairs {
+
+        private final String[][] near = new String[QUERIES][];
+        private final String[][] far = new String[QUERIES][];
+        private String[][] unreachable = new String[QUERIES][];
+
+        static Pairs pick(PathFinder finder, int vertices, Random random) {
+            final Pairs pairs = new Pairs();
+            int unreachable = 0;
+            for (int s = 0; s < SOURCES; s++) {
+                final int source = random.nextInt(vertices);
+                final int[] distances = finder.getShortestPathLengths(GraphGenerator.name(source));
+                final int farthest = Arrays.stream(distances).max().getAsInt();
+
+                // An equal share of each kind from each source
+                final int from = s * QUERIES / SOURCES;
+                final int to = (s + 1) * QUERIES / SOURCES;
+                final int[] near = matching(distances, d -> d == 1 || d == 2);
+                final int[] far = matching(distances, d -> d == farthest && d > 0);
+                final int[] none = matching(distances, d -> d < 0);
+                for (int i = from; i < to; i++) {
+                    pairs.near[i] = pair(source, near, random);
+                    pairs.far[i] = pair(source, far, random);
+                    if (none.length > 0) {
+                        pairs.unreachable[unreachable++] = pair(source, none, random);
+                    }
+                }
+            }
+            pairs.unreachable = Arrays.copyOf(pairs.unreachable, unreachable);
+            return pairs;
+        }
+
+        private static int[] matching(int[] distances, IntPredicate test) {
+            return IntStream.range(0, distances.length)
+                .filter(v -> test.test(distances[v]))
+                .toArray();
+        }
+
+        /* source and one of targets, or source twice if there are none
+         */
+        private static String[] pair(int source, int[] targets, Random random) {
+            final int target = targets.length == 0 ? source : targets[random.nextInt(targets.length)];
+            return new String[] { GraphGenerator.name(source), GraphGenerator.name(target) };
+        }
+    }
+}
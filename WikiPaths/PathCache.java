@@ -0,0 +1,149 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, least-recently-used cache of shortest paths, keyed by their
+ * (start, end) vertex pair, with counters for how well it is doing.
+ *
+ * Paths are kept as the int[]s that searches return, and "there is no path"
+ * is cached too (as an empty array). The bound is on an estimate of the
+ * bytes the entries occupy, so a few long paths count for as much as many
+ * short ones. It is safe for any number of threads: lookups and updates
+ * are synchronized, but the searches that fill it in run outside the lock
+ * (so two threads that miss on the same pair at once will both search).
+ */
+public final class PathCache {
+
+    /* Rough heap cost of one entry besides its path: the map entry, the
+     * boxed key, and the array header
+     */
+    private static final long ENTRY_BYTES = 80;
+
+    private static final int[] NO_PATH = new int[0];
+
+    private final long maxBytes;
+
+    /* In access order, so the first entry is always the least recently used
+     */
+    private final LinkedHashMap<Long,int[]> paths = new LinkedHashMap<Long,int[]>(16, 0.75f, true);
+    private long bytes;
+
+    /* Bumped by invalidate(), so that a search that started before the graph
+     * changed does not put its (possibly stale) result in the cache
+     */
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes roughly how much heap the cached paths may occupy
+     */
+    PathCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached path from start to end, or runs search to find it (and
+     * caches that).
+     * @param start the first vertex of the path
+     * @param end the last vertex of the path
+     * @param search finds the path if it is not cached, returning null if there
+     *      is none
+     * @return the path, if there is one. The array must not be modified.
+     */
+    Optional<int[]> get(int start, int end, Supplier<int[]> search) {
+        final Long key = ((long) start << 32) | (end & 0xffffffffL);
+        final long started;
+        synchronized (this) {
+            final int[] cached = paths.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached == NO_PATH ? Optional.empty() : Optional.of(cached);
+            }
+            started = generation;
+        }
+        misses.incrementAndGet();
+
+        final int[] path = search.get();
+        synchronized (this) {
+            if (generation == started && !paths.containsKey(key)) {
+                final int[] value = path == null ? NO_PATH : path;
+                paths.put(key, value);
+                bytes += cost(value);
+                evict();
+            }
+        }
+        return Optional.ofNullable(path);
+    }
+
+    /**
+     * Forgets every cached path. Needed whenever the graph changes.
+     */
+    public synchronized void invalidate() {
+        paths.clear();
+        bytes = 0;
+        generation++;
+    }
+
+    /* Drops least recently used entries until the cache fits its bound
+     */
+    private void evict() {
+        final Iterator<Map.Entry<Long,int[]>> eldest = paths.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= cost(eldest.next().getValue());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static long cost(int[] path) {
+        return ENTRY_BYTES + 4L * path.length;
+    }
+
+    /**
+     * @return how many lookups found their path in the cache
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return how many lookups had to search
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return how many paths have been dropped to keep within the bound
+     */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return how many paths are cached right now
+     */
+    public synchronized int size() {
+        return paths.size();
+    }
+
+    /**
+     * @return roughly how many bytes the cached paths occupy right now
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "PathCache(" + size() + " paths, ~" + bytes() + " bytes, " + hits() + " hits, "
+            + misses() + " misses, " + evictions() + " evictions)";
+    }
+}
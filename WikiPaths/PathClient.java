@@ -0,0 +1,192 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A connection to a PathServer (see there for the protocol). Not safe for
+ * more than one thread at a time; open one per thread instead.
+ *
+ * path(), length() and via() ask one question and wait for its answer;
+ * send() asks a whole batch, with a round trip per PathServer.WINDOW of it
+ * rather than per question.
+ */
+public final class PathClient implements Closeable {
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final Writer out;
+
+    /**
+     * Connects to a server on this machine (where PathServer listens by
+     * default).
+     * @param port the port it listens on
+     * @throws IOException if it can't be reached
+     */
+    public PathClient(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * @param host where the server runs
+     * @param port the port it listens on
+     * @throws IOException if it can't be reached
+     */
+    public PathClient(String host, int port) throws IOException {
+        this(InetAddress.getByName(host), port);
+    }
+
+    private PathClient(InetAddress host, int port) throws IOException {
+        this.socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param node1 name of the starting article node
+     * @param node2 name of the ending article node
+     * @return list of the names of nodes on a shortest path, or null if there is none
+     * @throws IOException if the server can't be reached, or didn't answer the
+     *      question (timed out, was busy, or found it wrong)
+     */
+    public List<String> path(String node1, String node2) throws IOException {
+        return answer(send(request("PATH", node1, node2)));
+    }
+
+    /**
+     * @param node1 name of the starting article node
+     * @param intermediateNodes names of the article nodes the path may go through
+     * @param node2 name of the ending article node
+     * @return list of the names of nodes on a shortest path through any of
+     *      intermediateNodes, or null if there is none
+     * @throws IOException as for path()
+     */
+    public List<String> via(String node1, List<String> intermediateNodes, String node2) throws IOException {
+        final List<String> fields = new ArrayList<String>();
+        fields.add(node1);
+        fields.addAll(intermediateNodes);
+        fields.add(node2);
+        return answer(send(request("VIA", fields.toArray(new String[0]))));
+    }
+
+    /**
+     * @param node1 name of the starting article node
+     * @param node2 name of the ending article node
+     * @return the length of a shortest path, or -1 if there is none
+     * @throws IOException as for path()
+     */
+    public int length(String node1, String node2) throws IOException {
+        final List<String> answer = answer(send(request("LENGTH", node1, node2)));
+        return answer == null ? -1 : Integer.parseInt(answer.get(0));
+    }
+
+    /**
+     * Sends one request and waits for its answer.
+     * @param request a request line (without the line break)
+     * @return the answer line
+     * @throws IOException if the server can't be reached
+     */
+    public String send(String request) throws IOException {
+        return send(Collections.singletonList(request)).get(0);
+    }
+
+    /**
+     * Sends a batch of requests, and waits for all of their answers. They go
+     * PathServer.WINDOW at a time (which the server works on at once), one
+     * round trip each; sending more before reading the answers could leave
+     * both ends stuck writing to each other.
+     * @param requests request lines (without line breaks)
+     * @return the answer lines, in the same order
+     * @throws IOException if the server can't be reached
+     */
+    public List<String> send(List<String> requests) throws IOException {
+        final List<String> answers = new ArrayList<String>(requests.size());
+        while (answers.size() < requests.size()) {
+            final int sent = Math.min(requests.size(), answers.size() + PathServer.WINDOW);
+            for (String request : requests.subList(answers.size(), sent)) {
+                out.write(request);
+                out.write('\n');
+            }
+            out.flush();
+            while (answers.size() < sent) {
+                final String answer = in.readLine();
+                if (answer == null) {
+                    throw new IOException("Server hung up");
+                }
+                answers.add(answer);
+            }
+        }
+        return answers;
+    }
+
+    /**
+     * @param command PATH, LENGTH or VIA
+     * @param articles the names of the articles it is about
+     * @return the request line asking that
+     */
+    public static String request(String command, String... articles) {
+        return command + "\t" + String.join("\t", articles);
+    }
+
+    /**
+     * Hangs up, after the server has answered everything sent.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write("QUIT\n");
+            out.flush();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /* What an answer says, past its OK: null for NONE, and an exception for
+     * anything else
+     */
+    private static List<String> answer(String line) throws IOException {
+        final List<String> fields = Arrays.asList(line.split("\t"));
+        if (fields.get(0).equals("NONE")) {
+            return null;
+        } else if (!fields.get(0).equals("OK")) {
+            throw new IOException("Server answered " + line);
+        }
+        return fields.subList(1, fields.size());
+    }
+
+    /**
+     * Sends every line of standard input to a server, as one batch, and prints
+     * the answers.
+     * @param args the port, and optionally the host (by default this machine)
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && args.length != 2) {
+            System.out.println("Usage: PathClient <port> [host] < requests");
+            return;
+        }
+        final BufferedReader input = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        final List<String> requests = new ArrayList<String>();
+        for (String line = input.readLine(); line != null; line = input.readLine()) {
+            if (!line.isEmpty()) {
+                requests.add(line);
+            }
+        }
+        final int port = Integer.parseInt(args[0]);
+        try (PathClient client = args.length == 2 ? new PathClient(args[1], port) : new PathClient(port)) {
+            for (String answer : client.send(requests)) {
+                System.out.println(answer);
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 import java.io.*;
 import java.net.URLDecoder;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.stream.*;
 import java.util.function.*;
 
@@ -43,34 +45,104 @@ import java.util.function.*;
  * all other comments are slach-slash styel.
  */
 
-public class PathFinder extends MysteryUnweightedGraphImplementation {
+public class PathFinder {
 
-    /* Maps for article - id pairs, going in both directions
+    /* The graph itself: article - id pairs (going in both directions), the
+     * links, and the same links reversed (so each article's neighbors are the
+     * articles that link to it, which lets searches work backwards from their
+     * destination). Ids are plain ints into flat arrays (see CompactGraph),
+     * which is what lets the full wikipedia link graph fit in memory: a boxed
+     * Integer per vertex and per edge does not. When opened from a snapshot,
+     * those arrays are a mapped file instead (see MappedGraph).
+     *
+     * The graph can change while it is being searched (see addLink()). Each
+     * change makes a new, immutable version (see GraphVersion), and each query
+     * reads the current version once and uses it throughout. A version also
+     * holds whichever of these are right for it:
+     *
+     *  - the strongly connected components of the links, and which of them can
+     *    reach which (see ComponentIndex), so that most pairs of articles with no
+     *    path between them are told apart without searching
+     *  - precomputed distances to and from a few landmark articles (see
+     *    LandmarkIndex), which bound the length of any path, and guide searches
+     *    towards their destination. None until useLandmarks() or loadLandmarks()
+     *    is called.
+     *
+     * Ids never change, and articles are never removed, so an id from one
+     * version means the same article in every later one.
+     *
+     * Queries about the components themselves (getComponentId() and the like,
+     * and getDistanceProfile()) are answered from the latest version that has
+     * a component index (see LiveGraph.indexed()), which may be a few changes
+     * behind the current one, rather than waiting for a new index to be built.
+     */
+    private final LiveGraph graph;
+
+    /* How the loaded articles are numbered (see VertexOrder): by default in
+     * vertex file order, or renumbered so that articles that link to each
+     * other sit near each other in memory. Everything public takes and
+     * returns names, so the numbering only shows where results are promised
+     * in vertex file order, and those are put back in it.
      */
-    private final Map<String,Integer> articleToId;
-    private final Map<Integer,String> idToArticle;
+    private final VertexOrder order;
 
-    /* Processes files according to an action
+    /* Optional cache of recent search results (see PathCache). Empty until
+     * useCache() is called.
      */
-    private void process (String file, Consumer<String> consumer) {
+    private final AtomicReference<PathCache> cache = new AtomicReference<PathCache>();
+
+    /* Optional statistics about every search (see SearchMetrics). Empty until
+     * useMetrics() is called. Searches are also published as Flight Recorder
+     * events whenever a recording asks for them, either way.
+     */
+    private final AtomicReference<SearchMetrics> metrics = new AtomicReference<SearchMetrics>();
+
+    /* Where getShortestPaths() runs its searches unless told otherwise: a
+     * thread per core, made when there is work and gone again once idle for
+     * IDLE_SECONDS. Every thread that searches keeps a SearchContext (tens of
+     * bytes per article, see there) for as long as it lives, so these are
+     * neither shared with the rest of the process (as the common ForkJoinPool
+     * is) nor kept around for good.
+     */
+    private static final long IDLE_SECONDS = 30;
+    private final ExecutorService searchThreads = searchThreads();
+
+    private static ExecutorService searchThreads() {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final ThreadPoolExecutor threads = new ThreadPoolExecutor(cores, cores, IDLE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), runnable -> {
+                final Thread thread = new Thread(runnable, "PathFinder search");
+                thread.setDaemon(true);
+                return thread;
+            });
+        threads.allowCoreThreadTimeOut(true);
+        return threads;
+    }
+
+    /* Loads the vertex and edge files (in parallel, see GraphLoader), or the
+     * page and pagelinks dumps they are made from, and reports anything in
+     * them that had to be skipped
+     */
+    private static GraphLoader process(String nodeFile, String edgeFile) {
         try {
-            (new BufferedReader(new FileReader (new File(file))))
-                .lines()
-                // Ignore empty lines and comments
-                .filter(line -> !line.equals("") && line.charAt(0) != '#')
-                // Do specified action
-                .forEach(consumer);
-        } catch(Exception e) {
+            final GraphLoader loaded = GraphLoader.isDump(nodeFile)
+                ? GraphLoader.loadDumps(nodeFile, edgeFile)
+                : GraphLoader.load(nodeFile, edgeFile);
+            loaded.problems.forEach(System.err::println);
+            return loaded;
+        } catch(IOException e) {
             // I assume that, because the constructor's typesignature was given to
             // us, it cannot throw exceptions. I saw two options, then. The
-            // first was having the instance variables articleToId and idToArticle
+            // first was having the instance variable articles
             // be optionals. That way issues with files only had to be dealt with
-            // when these maps (theoreticlly the only things affected by such failures)
+            // when this map (theoreticlly the only things affected by such failures)
             // were used. However, that would have complicated every single method
             // quite a bit. So, the other option I saw (which is what you see below)
             // was just to exit. Given the usage of this class, that works fine.
-            System.err.println("Problem processing " + file + "...\n..." + e);
+            System.err.println("Problem processing " + nodeFile + " and " + edgeFile + "...\n..." + e);
             System.exit(0);
+            // Never reached, but the compiler can't know that
+            return null;
         }
     }
 
@@ -81,22 +153,139 @@ public class PathFinder extends MysteryUnweightedGraphImplementation {
      * @param edgeFile name of the file with the edge names
      */
     public PathFinder(String nodeFile, String edgeFile) {
+        this(nodeFile, edgeFile, VertexOrdering.FILE);
+    }
 
-        // Maps to match articles with their id's in the graph, and visa versa
-        articleToId = new HashMap<String,Integer>();
-        idToArticle = new HashMap<Integer,String>();
+    /**
+     * Constructs a PathFinder that represents the graph with nodes (vertices) specified as in
+     * nodeFile and edges specified as in edgeFile, numbering the nodes internally as
+     * ordering says. This changes how fast searches are, but not what any method returns.
+     * @param nodeFile name of the file with the node names
+     * @param edgeFile name of the file with the edge names
+     * @param ordering how to number the nodes (see VertexOrdering)
+     */
+    public PathFinder(String nodeFile, String edgeFile, VertexOrdering ordering) {
+        this(nodeFile, edgeFile, ordering, false);
+    }
 
-        process(nodeFile, line -> {
-            // Populate articles initialized above
-            Integer id = addVertex();
-            articleToId.put(line, id);
-            idToArticle.put(id, line);
-        });
-        process(edgeFile, line -> {
-            // Parse and add links to graph
-            String[] links = line.split("\t");
-            addEdge(articleToId.get(links[0]), articleToId.get(links[1]));
-        });
+    /**
+     * Constructs a PathFinder that represents the graph with nodes (vertices) specified as in
+     * nodeFile and edges specified as in edgeFile, numbering the nodes internally as
+     * ordering says, and optionally keeping the edges compressed (see CompressedGraph).
+     * Compressed edges take a fraction of the memory, but every search decodes them as it
+     * goes, so searches are slower. Neither changes what any method returns. Loading still
+     * builds the edges as plain arrays first, so it needs as much memory as loading them
+     * uncompressed, and more; to serve a graph in less, save() it once and open() that.
+     *
+     * Instead of a vertex file and an edge file, this (and every other constructor) also
+     * takes wikipedia's page and pagelinks SQL dumps (files ending in .sql or .sql.gz),
+     * which are streamed straight from their compressed form (see GraphLoader.loadDumps()).
+     * @param nodeFile name of the file with the node names
+     * @param edgeFile name of the file with the edge names
+     * @param ordering how to number the nodes (see VertexOrdering)
+     * @param compressed whether to compress the edges
+     */
+    public PathFinder(String nodeFile, String edgeFile, VertexOrdering ordering, boolean compressed) {
+
+        // Both files are cut into pieces that are parsed on every core at
+        // once, and the links are frozen into their compact form (forwards
+        // and backwards) the same way
+        final GraphLoader loaded = process(nodeFile, edgeFile);
+
+        // Then, optionally, renumbered, which costs about as much again, and
+        // compressed, which costs several times that. Compression works best
+        // on renumbered graphs, where linked articles have nearby ids.
+        order = VertexOrder.choose(ordering, loaded.links, loaded.backlinks);
+        final Adjacency links = compressed(order.renumber(loaded.links), compressed);
+        graph = new LiveGraph(new GraphVersion(order.renumber(loaded.articles), links,
+            compressed(order.renumber(loaded.backlinks), compressed), ComponentIndex.build(links), null),
+            this::invalidate);
+    }
+
+    /* graph, compressed if it should be
+     */
+    private static Adjacency compressed(CompactGraph graph, boolean compressed) {
+        return compressed ? CompressedGraph.compress(graph, CompressedGraph.WINDOW) : graph;
+    }
+
+    /* For graphs that have already been loaded (see open()). Their components
+     * are found in the background.
+     */
+    private PathFinder(ArticleIndex articles, Adjacency links, Adjacency backlinks, VertexOrder order) {
+        this.order = order;
+        graph = new LiveGraph(new GraphVersion(articles, links, backlinks, null, null), this::invalidate);
+    }
+
+    /**
+     * Constructs a PathFinder from a snapshot file written by save(). The file is
+     * mapped into memory rather than read, so this takes about the same time no
+     * matter how large the graph is. Nodes are numbered as they were in the
+     * PathFinder that saved it, and its edges are compressed if they were there,
+     * in which case they are decoded straight out of the file.
+     * @param snapshotFile name of the snapshot file
+     * @return the PathFinder
+     * @throws IOException if the file is missing or is not a snapshot
+     */
+    public static PathFinder open(String snapshotFile) throws IOException {
+        final GraphSnapshot snapshot = GraphSnapshot.open(snapshotFile);
+        return new PathFinder(snapshot.articles, snapshot.links, snapshot.backlinks, snapshot.order);
+    }
+
+    /**
+     * Writes this PathFinder's graph to a snapshot file, to be opened later
+     * with open(). Compressed edges are written compressed.
+     * @param snapshotFile name of the snapshot file to (over)write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(String snapshotFile) throws IOException {
+        final GraphVersion current = graph.current();
+        GraphSnapshot.write(snapshotFile, current.articles, current.links, current.backlinks, order);
+    }
+
+    /* Forgets cached paths, which might not be shortest (or exist) any more,
+     * whenever the graph changes
+     */
+    private void invalidate() {
+        Optional.ofNullable(cache.get()).ifPresent(PathCache::invalidate);
+    }
+
+    /* Finds a shortest path between two articles (as ids) in the current
+     * version of the graph. Returns it as an array running from start to end,
+     * or null if there is no path.
+     */
+    private int[] search(int start, int end) {
+
+        // The breadth-first search itself lives in SearchContext. A context
+        // keeps its bookkeeping arrays from one search to the next (there is
+        // one per thread), and uses an 'epoch' stamp to tell which entries
+        // belong to the current search. That way, nothing the size of the
+        // whole graph is allocated or cleared per search, and a query only
+        // pays for the articles it actually reaches. The search runs from
+        // both ends at once (forwards along links from start, backwards
+        // along backlinks from end), which, with as many links per article
+        // as wikipedia has, reaches far fewer articles than a search from
+        // start alone. The result runs from start to end, or is null if
+        // there is no path.
+        //
+        // With landmarks, the search instead runs from start only, but heads
+        // for end first: articles are expanded in order of their distance
+        // from start plus a lower bound on their distance to end (A*), and
+        // those that provably can't reach end are never expanded at all.
+        //
+        // Before any of that, though: a search for a path that doesn't exist
+        // has to exhaust everything it can reach before giving up, which is
+        // the slowest search there is. Most such pairs are in components that
+        // are known not to reach each other, so those are answered at once.
+        //
+        // How much of the graph the search covered, and how long it took, is
+        // only measured if someone is listening (see SearchMetrics).
+        final GraphVersion current = graph.current();
+        final SearchContext context = SearchContext.forThread(current.links.vertexCount());
+        final LandmarkIndex index = current.landmarks;
+        return SearchMetrics.measure(metrics.get(), context, current.articles, start, end, () ->
+            !current.mayReach(start, end) ? null : index == null
+                ? context.bidirectionalPath(current.links, current.backlinks, start, end)
+                : context.guidedPath(current.links, start, end, v -> index.lower(v, end)));
     }
 
     /* Core search method. Takes two articles (as names), and returns an
@@ -110,81 +299,24 @@ public class PathFinder extends MysteryUnweightedGraphImplementation {
     private Optional<Stream<String>> travel(String starticle, String endicle) {
 
         // Input's representation within the graph
-        final Integer start = articleToId.get(starticle);
-        final Integer end = articleToId.get(endicle);
-
-        // Queue to be used in the breadth-first search
-        final Queue<Integer> q = new ArrayDeque<Integer>();
-
-        // Keys of this map are all of the article id's. As articles are
-        // added to q, their predecessor (the node (value) whose iteration
-        // in the search added it) overwrites 'empty' as the articles 'visited'
-        // value. In such a way, this map serves to allow us to both tell which
-        // articles have been visited, and also backtrack once we have reached
-        // the end.
-        final Map<Integer,Optional<Integer>> visited = new HashMap<Integer,Optional<Integer>>();
-        idToArticle.keySet().forEach((Integer x) -> visited.put(x, Optional.empty()));
-
-        // Infinite (lazy evaluated) repitition of the breadth-first
-        // iteration that we have talked about in class. Optionals allow us
-        // to operate indefinitly on q without worrying about null values.
-        return Stream.iterate(Optional.of(start), stepM ->
-
-            // Unwrap the result of the last iteration (which exists only
-            // if the last iteration did not use up the last item in q).
-            stepM.flatMap(step -> {
-
-                // Iterate through neighbors, recording and adding to q those
-                // which we have not yet encountered.
-                getNeighbors(step).forEach(neighbor -> {
-                    if(!visited.get(neighbor).isPresent()) {
-                        visited.put(neighbor, stepM);
-                        q.add(neighbor);
-                    }
-                });
-
-                // Safely wrap the possibly nonexistent next step for
-                // the next iteration
-                return Optional.ofNullable(q.poll());
-            })
-        )
-
-        // 'findFirst()' is a short-circuiting, terminal operation. So, this
-        // combination is effectively a 'findFirstThat()' sort of thing.
-        // 'findFirst()' returns an optional, which makes sense for finite
-        // streams. However, this is an infinite stream, so findFirst
-        // would never return empty. So, the generally frowned-upon
-        // operation get() is safe under these circumstances.
-        .filter(stepM ->
-            // Contents equal to end means we found a path!
-            stepM.map(step -> step.equals(end))
-            // Empty means no path, so short-circuit
-            .orElse(true)
-        ).findFirst().get()
-
-        // 'dummy' is not used in the body of its lambda. This construction is
-        // analogous to the monadic '>>' (as opposed to '>>='), the 'phantom bind'.
-        // Basically, the computation proceeds if the search stopped with a result,
-        // rather than an empty q.
-        .map(dummy -> {
-
-            // It puzzles me why a 'takeWhile' (returning another stream)
-            // doesn't already exist. However, like 'findFirst', 'allMatch'
-            // is a short-circuiting terminal operation, so this works in the
-            // same way as our 'takeFirstThat' sort of thing. The only values
-            // that get peeked at (and thus added to the new stream by bob the
-            // builder) are the ones up to and including the first occurence of
-            // start.
-            final Stream.Builder<Integer> bob = Stream.builder();
-            Stream.iterate(end, step -> visited.get(step).get())
-                  .peek(bob)
-                  .allMatch(step -> !step.equals(start));
-
-            // This function takes and returns article names (becasue that way
-            // other methods don't have to worry at all about id's), so we map
-            // them back here.
-            return bob.build().map(x -> idToArticle.get(x));
-        });
+        final int start = graph.current().articles.id(starticle);
+        final int end = graph.current().articles.id(endicle);
+
+        // Searching is skipped altogether if the result is in the cache.
+        // The search reads the current version only once the cache has
+        // missed, so that a change made before then is sure to be seen (or
+        // else to stop the result from being cached).
+        final Optional<int[]> pathM = Optional.ofNullable(cache.get())
+            .map(paths -> paths.get(start, end, () -> search(start, end)))
+            .orElseGet(() -> Optional.ofNullable(search(start, end)));
+
+        // Read the path backwards (see above), mapping ids back to names,
+        // because this function takes and returns article names (that way
+        // other methods don't have to worry at all about id's). The latest
+        // version knows every article the search could have found.
+        final ArticleIndex articles = graph.current().articles;
+        return pathM.map(path -> IntStream.range(0, path.length)
+                .mapToObj(i -> articles.name(path[path.length - 1 - i])));
     }
 
     /* Combines two searches where the end of one is the start of the other.
@@ -199,8 +331,8 @@ public class PathFinder extends MysteryUnweightedGraphImplementation {
 
     /* A function object for decoding url-compatible strings. For the
      * sake of speed, strings are only decoded when they are about to
-     * be displayed (rather than during the creation of 'articleToId'
-     * and 'idToArticle', in which case ALL articles would be decoded).
+     * be displayed (rather than during the creation of 'articles', in
+     * which case ALL articles would be decoded).
      * An object rather than a method for use with streams.
      */
     final private static Function<String,String> safeDecode = x -> {
@@ -230,21 +362,20 @@ public class PathFinder extends MysteryUnweightedGraphImplementation {
         // Instantiate this class
         final PathFinder finder = new PathFinder(args[0], args[1]);
 
-        // Array of all articles. Set's 'toArray' requires a token array of the desired
-        // return type, unless that type is Object.
-        final String[] articles = finder.articleToId.keySet().toArray(new String[0]);
+        // All articles, by id
+        final ArticleIndex articles = finder.graph.current().articles;
 
         // There is no way to choose articles in an empty vertex file. This is
         // (I think) the only instance where a file would break the program.
-        if(articles.length == 0) {
+        if(articles.size() == 0) {
             System.out.println("Empty vertex file. Unable to choose vertecies.");
             return;
         }
 
         // An iterator that generates random articles
         final Iterator<String> randicles = (new Random())
-            .ints(0, articles.length)
-            .mapToObj(x -> articles[x])
+            .ints(0, articles.size())
+            .mapToObj(articles::name)
             .iterator();
 
         // Three random articles
@@ -307,11 +438,108 @@ public class PathFinder extends MysteryUnweightedGraphImplementation {
      * Just an int wrapper for travel()
      */
     public int getShortestPathLength(String node1, String node2) {
-        return travel(node1, node2)
+        // When the landmark bounds already agree (or rule out any path),
+        // there's no need to search at all
+        final int[] bounds = getShortestPathLengthBounds(node1, node2);
+        return bounds[0] == bounds[1] ? bounds[0] : travel(node1, node2)
                 .map(x -> (int) x.count())
                 .orElse(0) - 1;
     }
 
+    /**
+     * Returns bounds on the length of the shortest path from node1 to node2, without
+     * searching for it. Without landmarks (see useLandmarks()), these are trivial,
+     * except that pairs in components that can't reach each other have no path.
+     * @param node1 name of the starting article node
+     * @param node2 name of the ending article node
+     * @return an array of the lower bound and the upper bound, where an upper bound
+     *      of Integer.MAX_VALUE means there is none. If there is certainly no path,
+     *      both are -1.
+     */
+    public int[] getShortestPathLengthBounds(String node1, String node2) {
+        final GraphVersion current = graph.current();
+        final int start = current.articles.id(node1);
+        final int end = current.articles.id(node2);
+        return !current.mayReach(start, end) ? new int[] { -1, -1 }
+            : Optional.ofNullable(current.landmarks)
+            .map(index -> index.lower(start, end) < 0
+                ? new int[] { -1, -1 }
+                : new int[] { index.lower(start, end), index.upper(start, end) })
+            .orElse(start == end ? new int[] { 0, 0 } : new int[] { 0, Integer.MAX_VALUE });
+    }
+
+    /**
+     * Chooses landmark articles and precomputes every article's distance to and
+     * from each of them (two full searches per landmark). From then on, path
+     * lengths can be bounded without searching, and searches are guided by those
+     * bounds.
+     * @param count how many landmarks to use (a dozen or so is typical)
+     * @param farthest whether to choose each landmark to be far from the others,
+     *      rather than just choosing the articles with the most links
+     */
+    public void useLandmarks(int count, boolean farthest) {
+        final GraphVersion current = graph.current();
+        graph.useLandmarks(current, LandmarkIndex.build(current.links, current.backlinks, count, farthest));
+    }
+
+    /**
+     * Writes the landmarks chosen by useLandmarks() to a file, to be loaded later
+     * with loadLandmarks() rather than computed again.
+     * @param landmarkFile name of the file to (over)write
+     * @throws IOException if the file cannot be written
+     * @throws IllegalStateException if there are no landmarks (which includes
+     *      the time between a change to the graph and the next compaction)
+     */
+    public void saveLandmarks(String landmarkFile) throws IOException {
+        Optional.ofNullable(graph.current().landmarks)
+            .orElseThrow(() -> new IllegalStateException("No landmarks to save"))
+            .save(landmarkFile, order);
+    }
+
+    /**
+     * Loads landmarks written by saveLandmarks() for this same graph, as if by
+     * useLandmarks().
+     * @param landmarkFile name of the file
+     * @throws IOException if the file cannot be read, or is for another graph
+     */
+    public void loadLandmarks(String landmarkFile) throws IOException {
+        final GraphVersion current = graph.current();
+        graph.useLandmarks(current, LandmarkIndex.load(landmarkFile, current.links.vertexCount(), order));
+    }
+
+    /**
+     * Starts caching the results of getShortestPath and getShortestPathLength
+     * (including both halves of paths through an intermediate node, separately),
+     * keeping the most recently used ones. Replaces any previous cache.
+     * @param maxBytes roughly how much memory the cached paths may take up
+     * @return the cache, for its hit, miss and eviction counts
+     */
+    public PathCache useCache(long maxBytes) {
+        final PathCache paths = new PathCache(maxBytes);
+        cache.set(paths);
+        return paths;
+    }
+
+    /**
+     * Starts keeping statistics about every search from now on: latency
+     * histograms, how much of the graph searches covered, and the slowest
+     * search. Replaces any previous statistics. (Cache hits aren't searches,
+     * so they aren't counted.)
+     * @return the statistics, which keep updating as searches run
+     */
+    public SearchMetrics useMetrics() {
+        final SearchMetrics stats = new SearchMetrics();
+        metrics.set(stats);
+        return stats;
+    }
+
+    /**
+     * Stops keeping statistics about searches (see useMetrics()).
+     */
+    public void stopMetrics() {
+        metrics.set(null);
+    }
+
     // Turns a stream into a list of its elements in reverse order
     final private static Function<Stream<String>,List<String>> listify = x -> {
         List<String> list = x.collect(Collectors.toList());
@@ -348,4 +576,343 @@ public class PathFinder extends MysteryUnweightedGraphImplementation {
     public List<String> getShortestPath(String node1, String intermediateNode, String node2) {
         return travelThrough(node1, intermediateNode, node2).map(listify).orElse(null);
     }
+
+    /* Turns a path of ids (in order) into a list of article names
+     */
+    private List<String> names(int[] path) {
+        final ArticleIndex articles = graph.current().articles;
+        return Arrays.stream(path)
+            .mapToObj(articles::name)
+            .collect(Collectors.toList());
+    }
+
+    /* Searches once from starticle for a path to the second article of each
+     * pair at the given positions (which all start with starticle). Returns
+     * each path (in order, as a list) by position, or null for those with no
+     * path. Unknown articles have no paths.
+     */
+    private Map<Integer,List<String>> travelFrom(String starticle, List<Integer> positions,
+            List<? extends Map.Entry<String,String>> pairs) {
+
+        final GraphVersion current = graph.current();
+        final int start = current.articles.id(starticle);
+
+        // Ends that start certainly can't reach are left out of the search
+        final int[] ends = positions.stream()
+            .mapToInt(i -> current.articles.id(pairs.get(i).getValue()))
+            .map(end -> current.mayReach(start, end) ? end : -1)
+            .toArray();
+
+        // A single breadth-first search that stops once it has reached all
+        // of the ends (see SearchContext)
+        final int[][] paths = start < 0
+            ? new int[ends.length][]
+            : SearchContext.forThread(current.links.vertexCount()).pathsFrom(current.links, start, ends);
+
+        // Collectors.toMap() doesn't allow null values, hence the long form
+        return IntStream.range(0, ends.length).boxed().collect(
+            HashMap::new,
+            (found, i) -> found.put(positions.get(i), Optional.ofNullable(paths[i])
+                .map(this::names)
+                .orElse(null)),
+            HashMap::putAll);
+    }
+
+    /**
+     * Returns a shortest path for each of many pairs of articles, searching on as many
+     * threads as there are cores. See getShortestPaths(List, Executor). The threads
+     * belong to this PathFinder, and each keeps about 20 bytes per article of search
+     * bookkeeping until it has been idle for half a minute.
+     * @param pairs the (starting article, ending article) pairs
+     * @return for each pair, in order, what getShortestPath would return for it
+     */
+    public List<List<String>> getShortestPaths(List<? extends Map.Entry<String,String>> pairs) {
+        return getShortestPaths(pairs, searchThreads);
+    }
+
+    /**
+     * Returns a shortest path for each of many pairs of articles. Pairs that start
+     * with the same article share a single search, and the searches run in parallel
+     * on executor. Every thread of executor that runs one keeps about 20 bytes per
+     * article of search bookkeeping (see SearchContext) for as long as it lives, so a
+     * pool shared with other work, or kept for good, keeps that memory too.
+     * @param pairs the (starting article, ending article) pairs
+     * @param executor where to run the searches
+     * @return for each pair, in order, what getShortestPath would return for it
+     *      (null if there is no path, or if either article does not exist)
+     */
+    public List<List<String>> getShortestPaths(List<? extends Map.Entry<String,String>> pairs,
+            Executor executor) {
+
+        // Positions of the pairs, grouped by their starting article
+        final Map<String,List<Integer>> groups = IntStream.range(0, pairs.size()).boxed()
+            .collect(Collectors.groupingBy(i -> pairs.get(i).getKey()));
+
+        // One search per group. Each search sees one version of the graph
+        // throughout, so they can all run at once without any coordination.
+        final List<CompletableFuture<Map<Integer,List<String>>>> searches = groups.entrySet().stream()
+            .map(group -> CompletableFuture.supplyAsync(
+                () -> travelFrom(group.getKey(), group.getValue(), pairs), executor))
+            .collect(Collectors.toList());
+
+        // Gather the results back into input order
+        final Map<Integer,List<String>> found = new HashMap<Integer,List<String>>();
+        searches.forEach(search -> found.putAll(search.join()));
+        return IntStream.range(0, pairs.size())
+            .mapToObj(found::get)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns a shortest path from node1 to node2, like getShortestPath(node1, node2),
+     * but finds it with a search that expands each level of the search on every
+     * core at once (see FrontierSearch). This is slower for most pairs, since it
+     * pays for bookkeeping the size of the whole graph, but faster for pairs whose
+     * search is going to reach most of the graph anyway.
+     * @param node1 name of the starting article node
+     * @param node2 name of the ending article node
+     * @return list of the names of nodes on the shortest path
+     */
+    public List<String> getShortestPathInParallel(String node1, String node2) {
+        final GraphVersion current = graph.current();
+        final int start = current.articles.id(node1);
+        final int end = current.articles.id(node2);
+        return Optional.ofNullable(current.mayReach(start, end) ? current.frontierSearch.path(start, end) : null)
+            .map(this::names)
+            .orElse(null);
+    }
+
+    /**
+     * Returns the length of the shortest path from node1 to every article, found
+     * with a breadth-first search that expands each level on every core at once.
+     * @param node1 name of the starting article node
+     * @return an array with, at position i, the length of the shortest path from
+     *      node1 to the article on the i'th line of the vertex file (not counting
+     *      comments or empty lines, and followed by any articles added since, in
+     *      the order they were added), or -1 if there is no such path. null if node1
+     *      is not an article.
+     */
+    public int[] getShortestPathLengths(String node1) {
+        final GraphVersion current = graph.current();
+        final int start = current.articles.id(node1);
+        return start < 0 ? null : order.toFileOrder(current.frontierSearch.distancesFrom(start));
+    }
+
+    /* Searches forwards from starticle and backwards from endicle, each only
+     * until it has reached all of the intermediate articles (see
+     * SearchContext.searchAround()), and ranks the intermediates by the length
+     * of the path from starticle through them to endicle, shortest first.
+     * Intermediates with no such path (or that don't exist) are left out. The
+     * paths themselves can be read from context until its next search.
+     */
+    private List<Integer> rankThrough(GraphVersion current, SearchContext context, String starticle,
+            Collection<String> intermediates, String endicle) {
+
+        final int start = current.articles.id(starticle);
+        final int end = current.articles.id(endicle);
+        final int[] vias = intermediates.stream()
+            .mapToInt(current.articles::id)
+            .filter(via -> via >= 0)
+            .distinct()
+            .toArray();
+        if(start < 0 || end < 0) {
+            return Collections.emptyList();
+        }
+
+        // At most two searches in all, however many intermediates there are
+        context.searchAround(current.links, current.backlinks, start, vias, end);
+
+        // The length of the path through each reachable intermediate
+        final ToIntFunction<Integer> length = via -> context.distanceFrom(via) + context.distanceTo(via);
+        return Arrays.stream(vias).boxed()
+            .filter(via -> context.distanceFrom(via) >= 0 && context.distanceTo(via) >= 0)
+            .sorted(Comparator.comparingInt(length))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns a shortest path from node1 to node2 that includes at least one of
+     * intermediateNodes. Takes at most two searches, no matter how many intermediate nodes
+     * there are.
+     * @param node1 name of the starting article node
+     * @param intermediateNodes names of the article nodes the path may go through
+     * @param node2 name of the ending article node
+     * @return list that has node1 at position 0, node2 in the final position, and the names
+     *      of each node on the path (in order) in between, or null if no such path exists
+     */
+    public List<String> getShortestPathThroughAny(String node1, Collection<String> intermediateNodes,
+            String node2) {
+        final GraphVersion current = graph.current();
+        final SearchContext context = SearchContext.forThread(current.links.vertexCount());
+        return rankThrough(current, context, node1, intermediateNodes, node2).stream()
+            .findFirst()
+            .map(via -> names(context.pathThrough(via)))
+            .orElse(null);
+    }
+
+    /**
+     * Ranks intermediateNodes by the length of the shortest path from node1 through
+     * each of them to node2, and returns the best k (with those lengths). Takes at most two
+     * searches, no matter how many intermediate nodes there are.
+     * @param node1 name of the starting article node
+     * @param intermediateNodes names of the article nodes to rank
+     * @param node2 name of the ending article node
+     * @param k how many of the best intermediate nodes to return
+     * @return up to k (intermediate node, path length) pairs, shortest first. Nodes
+     *      with no path through them are left out.
+     */
+    public List<Map.Entry<String,Integer>> getBestIntermediateNodes(String node1,
+            Collection<String> intermediateNodes, String node2, int k) {
+        final GraphVersion current = graph.current();
+        final SearchContext context = SearchContext.forThread(current.links.vertexCount());
+        return rankThrough(current, context, node1, intermediateNodes, node2).stream()
+            .limit(k)
+            .map(via -> new AbstractMap.SimpleImmutableEntry<String,Integer>(
+                current.articles.name(via), context.distanceFrom(via) + context.distanceTo(via)))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the id of the strongly connected component node belongs to. Two articles
+     * are in the same component exactly when each has a path to the other. Components
+     * are numbered so that links between different components always go from the
+     * higher id to the lower one.
+     *
+     * Components are those of the graph as of its latest component index, which is
+     * rebuilt in the background after changes that could join components, so this
+     * may not reflect the last few changes (and ids may be renumbered when it is
+     * rebuilt). Call compact() first for an answer that does.
+     * @param node name of an article node
+     * @return the id of node's component, from 0 to getComponentCount() - 1, or -1 if
+     *      node is not an article (or was added since the latest index)
+     */
+    public int getComponentId(String node) {
+        final GraphVersion current = graph.indexed();
+        final int id = current.articles.id(node);
+        return id < 0 ? -1 : current.components.component(id);
+    }
+
+    /**
+     * Returns the number of articles in a strongly connected component (as of the
+     * latest component index, see getComponentId()).
+     * @param componentId the id of the component (see getComponentId())
+     * @return the number of articles in it
+     */
+    public int getComponentSize(int componentId) {
+        return graph.indexed().components.size(componentId);
+    }
+
+    /**
+     * @return the number of strongly connected components in the graph (as of the
+     *      latest component index, see getComponentId())
+     */
+    public int getComponentCount() {
+        return graph.indexed().components.count();
+    }
+
+    /**
+     * Measures how far apart articles are, by searching from a random sample of them
+     * to every other article: the distribution of shortest path lengths, the
+     * eccentricity of each sampled article, and bounds on the diameter (see
+     * DistanceProfile). Searches run 64 at a time, on every core, over the graph as
+     * of its latest component index (see getComponentId()).
+     * @param samples how many articles to search from (all of them, if there are fewer)
+     * @param seed seeds the sample, so the same seed picks the same articles
+     * @return what the searches found (nothing, for a graph with no articles)
+     * @throws IllegalArgumentException if samples is negative
+     */
+    public DistanceProfile getDistanceProfile(int samples, long seed) {
+        final int count = Optional.of(samples)
+            .filter(n -> n >= 0)
+            .orElseThrow(() -> new IllegalArgumentException("Can't search from " + samples + " articles"));
+        final GraphVersion current = graph.indexed();
+        final int articles = current.links.vertexCount();
+
+        // Random.ints() needs a nonempty range. The sample always ends, since
+        // it never asks for more distinct ids than there are.
+        return profile(current, (articles == 0 ? IntStream.empty() : new Random(seed).ints(0, articles))
+            .distinct()
+            .limit(Math.min(count, articles))
+            .map(order::id)
+            .toArray());
+    }
+
+    /**
+     * Measures how far apart articles are, as seen from the given ones (see
+     * getDistanceProfile(int, long)).
+     * @param sources names of the articles to search from
+     * @return what the searches found
+     * @throws IllegalArgumentException if a source is not an article
+     */
+    public DistanceProfile getDistanceProfile(List<String> sources) {
+        final GraphVersion current = graph.indexed();
+        return profile(current, sources.stream()
+            .mapToInt(this::known)
+            // Articles added since the index was built can't be searched from
+            .filter(id -> id < current.links.vertexCount())
+            .toArray());
+    }
+
+    /* Searches from each source at once (see MultiSourceSearch)
+     */
+    private static DistanceProfile profile(GraphVersion current, int[] sources) {
+        return new MultiSourceSearch(current.links, current.backlinks, current.components)
+            .profile(sources, current.articles);
+    }
+
+    /* The id of an article that is required to exist
+     */
+    private int known(String node) {
+        return Optional.of(graph.current().articles.id(node))
+            .filter(id -> id >= 0)
+            .orElseThrow(() -> new IllegalArgumentException("No article named " + node));
+    }
+
+    /**
+     * Adds an article, with no links to or from it. Like the other changes to the
+     * graph, this can be called while queries are running (from any thread), and
+     * each query sees the graph either entirely before or entirely after it.
+     * @param node name of the new article node
+     * @return true if the article was added, false if there already was one by that name
+     */
+    public boolean addArticle(String node) {
+        return graph.change(current -> current.withArticle(node));
+    }
+
+    /**
+     * Adds a link from node1 to node2.
+     * @param node1 name of the article node the link is from
+     * @param node2 name of the article node the link is to
+     * @return true if the link was added, false if there already was one
+     * @throws IllegalArgumentException if either article does not exist
+     */
+    public boolean addLink(String node1, String node2) {
+        final int from = known(node1);
+        final int to = known(node2);
+        return graph.change(current -> current.withLink(from, to));
+    }
+
+    /**
+     * Removes the link from node1 to node2.
+     * @param node1 name of the article node the link is from
+     * @param node2 name of the article node the link is to
+     * @return true if the link was removed, false if there was no such link
+     * @throws IllegalArgumentException if either article does not exist
+     */
+    public boolean removeLink(String node1, String node2) {
+        final int from = known(node1);
+        final int to = known(node2);
+        return graph.change(current -> current.withoutLink(from, to));
+    }
+
+    /**
+     * Merges the changes made so far into the graph's compact form, and rebuilds
+     * the indexes they made stale, on the calling thread. This happens in the
+     * background anyway once enough changes have been made, so there's no need to
+     * call it, except to get the indexes back sooner. Queries and changes carry on
+     * meanwhile.
+     */
+    public void compact() {
+        graph.compact();
+    }
 }
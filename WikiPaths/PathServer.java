@@ -0,0 +1,415 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves a PathFinder's queries over a line-based protocol on a TCP port,
+ * so that the graph is loaded once and then shared by any number of clients
+ * (see PathClient), rather than loaded again for every question. It listens
+ * on the loopback address unless told otherwise. There is no
+ * authentication, so only bind it to an address that trusted clients alone
+ * can reach.
+ *
+ * Every request is one line of UTF-8, its fields separated by tabs (or, in
+ * lines without tabs, by spaces), and gets one line back:
+ *
+ *   PATH a b          OK, then the articles on a shortest path, or NONE
+ *   LENGTH a b        OK, then the length of a shortest path, or NONE
+ *   VIA a v... b      OK, then the articles on a shortest path through v (or
+ *                     through whichever of several v is best), or NONE
+ *   TIMEOUT ms        OK; later searches on this connection get ms (0 for
+ *                     the server's default) instead of the server's timeout
+ *   PING              OK
+ *   QUIT              closes the connection, once everything before it is
+ *                     answered
+ *
+ * A search can also be answered TIMEOUT (it ran past its timeout, and was
+ * abandoned), BUSY (too many searches were waiting already), or ERROR,
+ * then what went wrong. Answers come back in the order asked, but clients
+ * needn't wait for one before sending the next: a connection keeps up to
+ * WINDOW of its requests in flight at once, and only flushes its answers
+ * when it has no more requests to read, so a batch of requests sent
+ * together costs one round trip.
+ *
+ * Each connection is served by a thread of its own, which only reads,
+ * waits and writes; on Java 21 and later, that is a virtual thread (so idle
+ * connections cost next to nothing), and before, a pooled platform thread.
+ * The searches themselves run on a fixed pool of worker threads, since
+ * every thread that searches keeps a SearchContext as large as the graph:
+ * one per worker is affordable, one per connection would not be. The pool's
+ * queue is bounded too. When it is full, new searches are answered BUSY at
+ * once rather than queued without limit, and a connection that has WINDOW
+ * searches in flight stops reading, so a client that sends faster than it
+ * is answered is held back by TCP itself.
+ *
+ * A search's timeout runs from when it was read, including any time it
+ * spends queued. Past that, it is answered TIMEOUT, and the search gives up
+ * too (see SearchContext.withDeadline()), so its worker is free again
+ * within a few thousand vertices rather than when the search would have
+ * finished.
+ */
+public final class PathServer implements Closeable {
+
+    /* Requests a connection keeps in flight at once
+     */
+    static final int WINDOW = 64;
+
+    private final PathFinder finder;
+    private final InetAddress address;
+    private final int port;
+    private final long timeoutNanos;
+
+    /* Runs the searches, on a fixed number of threads, with a bounded queue
+     */
+    private final ThreadPoolExecutor searches;
+
+    /* Runs the connections, a thread each
+     */
+    private final ExecutorService connections = connectionThreads();
+
+    /* Open connections, so close() can close them (a thread blocked reading a
+     * socket can't be interrupted)
+     */
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong answered = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    private ServerSocket server;
+
+    /**
+     * Listens on the loopback address, so only clients on this machine can
+     * connect.
+     * @param finder what to answer queries with. Its graph may change while
+     *      serving (searches see whichever version is current when they start).
+     * @param port the local port to listen on, or 0 for any free one
+     * @param workers how many searches may run at once
+     * @param queueLimit how many more may wait for a worker before new ones are
+     *      answered BUSY
+     * @param timeoutMillis how long a search may take (including waiting for a
+     *      worker) before it is answered TIMEOUT and abandoned, or 0 for no limit
+     */
+    public PathServer(PathFinder finder, int port, int workers, int queueLimit, long timeoutMillis) {
+        this(finder, InetAddress.getLoopbackAddress(), port, workers, queueLimit, timeoutMillis);
+    }
+
+    /**
+     * @param finder what to answer queries with (as above)
+     * @param address the local address to listen on, or null for all of them
+     * @param port the port to listen on, or 0 for any free one
+     * @param workers how many searches may run at once
+     * @param queueLimit how many more may wait for a worker before new ones are
+     *      answered BUSY
+     * @param timeoutMillis how long a search may take (including waiting for a
+     *      worker) before it is answered TIMEOUT and abandoned, or 0 for no limit
+     */
+    public PathServer(PathFinder finder, InetAddress address, int port, int workers, int queueLimit,
+            long timeoutMillis) {
+        if (workers < 1 || queueLimit < 1 || timeoutMillis < 0) {
+            throw new IllegalArgumentException("Need at least one worker, room to queue, "
+                + "and a timeout that isn't negative");
+        }
+        this.finder = finder;
+        this.address = address;
+        this.port = port;
+        this.timeoutNanos = nanos(timeoutMillis);
+        this.searches = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueLimit), runnable -> {
+                final Thread thread = new Thread(runnable, "PathServer search");
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * Starts accepting connections, on a thread of its own.
+     * @return the port listened on
+     * @throws IOException if the port can't be listened on
+     */
+    public synchronized int start() throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Already started");
+        }
+        server = new ServerSocket(port, 0, address);
+        final ServerSocket listening = server;
+        final Thread acceptor = new Thread(() -> accept(listening), "PathServer accept");
+        acceptor.start();
+        return server.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones, and abandons any
+     * searches still queued.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+        for (Socket socket : open) {
+            socket.close();
+        }
+        connections.shutdownNow();
+        searches.shutdownNow();
+    }
+
+    /**
+     * @return how many requests have been answered, in any way
+     */
+    public long answered() {
+        return answered.get();
+    }
+
+    /**
+     * @return how many searches were answered BUSY, because the queue was full
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return how many searches were answered TIMEOUT
+     */
+    public long timedOut() {
+        return timedOut.get();
+    }
+
+    /* Hands every connection to a thread of its own, until the server socket
+     * is closed
+     */
+    private void accept(ServerSocket listening) {
+        while (!listening.isClosed()) {
+            try {
+                final Socket socket = listening.accept();
+                socket.setTcpNoDelay(true);
+                open.add(socket);
+                connections.execute(() -> serve(socket));
+            } catch (RejectedExecutionException | IOException e) {
+                // Closed (or closing): nothing more to accept
+                return;
+            }
+        }
+    }
+
+    /* Answers one connection's requests until it quits or goes away
+     */
+    private void serve(Socket socket) {
+        try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                Writer out = new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+
+            // Requests read but not answered yet, oldest first
+            final ArrayDeque<Pending> pending = new ArrayDeque<Pending>();
+            long timeout = timeoutNanos;
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                final List<String> fields = Arrays.asList(line.split(line.indexOf('\t') >= 0 ? "\t" : " +"));
+                final String command = fields.get(0).toUpperCase();
+                if (command.equals("QUIT")) {
+                    break;
+                } else if (command.equals("TIMEOUT")) {
+                    final boolean valid = fields.size() == 2 && fields.get(1).matches("[0-9]{1,12}");
+                    if (valid) {
+                        final long millis = Long.parseLong(fields.get(1));
+                        timeout = millis == 0 ? timeoutNanos : nanos(millis);
+                    }
+                    pending.add(Pending.answer(valid ? "OK" : "ERROR\tNot a timeout in milliseconds"));
+                } else {
+                    pending.add(submit(command, fields.subList(1, fields.size()), timeout));
+                }
+
+                // Answer whatever is in flight once there's nothing more to
+                // read yet (or there's too much in flight to read on)
+                while (!pending.isEmpty() && (pending.size() >= WINDOW || !in.ready())) {
+                    write(out, pending.remove());
+                }
+                if (pending.isEmpty()) {
+                    out.flush();
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(out, pending.remove());
+            }
+            out.flush();
+        } catch (SocketException e) {
+            // The client (or close()) hung up
+        } catch (IOException e) {
+            System.err.println("PathServer connection failed: " + e);
+        } finally {
+            open.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closed already, or going away anyway
+            }
+        }
+    }
+
+    /* Starts answering one request, unless it can be answered at once
+     */
+    private Pending submit(String command, List<String> arguments, long timeout) {
+        final long deadline = System.nanoTime() + timeout;
+        final boolean search = command.equals("PATH") || command.equals("LENGTH") || command.equals("VIA");
+        if (command.equals("PING") && arguments.isEmpty()) {
+            return Pending.answer("OK");
+        } else if (!search) {
+            return Pending.answer("ERROR\tUnknown request: " + command);
+        } else if (arguments.size() < (command.equals("VIA") ? 3 : 2)
+                || !command.equals("VIA") && arguments.size() > 2) {
+            return Pending.answer("ERROR\tWrong number of articles for " + command);
+        }
+
+        try {
+            return new Pending(searches.submit(() -> {
+                try {
+                    return timeout == 0 ? search(command, arguments)
+                        : SearchContext.withDeadline(deadline, () -> search(command, arguments));
+                } catch (CancellationException e) {
+                    return "TIMEOUT";
+                }
+            }), timeout == 0 ? 0 : deadline);
+        } catch (RejectedExecutionException e) {
+            return Pending.answer("BUSY");
+        }
+    }
+
+    /* Answers a search request, on a worker
+     */
+    private String search(String command, List<String> arguments) {
+        final String start = arguments.get(0);
+        final String end = arguments.get(arguments.size() - 1);
+        final List<String> vias = arguments.subList(1, arguments.size() - 1);
+        if (command.equals("LENGTH")) {
+            final int length = finder.getShortestPathLength(start, end);
+            return length < 0 ? "NONE" : "OK\t" + length;
+        }
+        final List<String> path = command.equals("PATH") ? finder.getShortestPath(start, end)
+            : vias.size() == 1 ? finder.getShortestPath(start, vias.get(0), end)
+            : finder.getShortestPathThroughAny(start, vias, end);
+        return path == null ? "NONE" : "OK\t" + String.join("\t", path);
+    }
+
+    /* Waits for a request's answer (until its deadline, if it has one), and
+     * writes it
+     */
+    private void write(Writer out, Pending request) throws IOException {
+        String answer;
+        try {
+            answer = request.deadline == 0 ? request.answer.get()
+                : request.answer.get(Math.max(0, request.deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Not started yet, or still searching: either way, it will give
+            // up on its own once it sees its deadline
+            request.answer.cancel(false);
+            answer = "TIMEOUT";
+        } catch (InterruptedException | CancellationException e) {
+            Thread.currentThread().interrupt();
+            throw new SocketException("Server closed");
+        } catch (ExecutionException e) {
+            answer = "ERROR\t" + e.getCause();
+        }
+
+        if (answer.equals("TIMEOUT")) {
+            timedOut.incrementAndGet();
+        } else if (answer.equals("BUSY")) {
+            rejected.incrementAndGet();
+        }
+        answered.incrementAndGet();
+        out.write(answer);
+        out.write('\n');
+    }
+
+    private static long nanos(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /* A thread per task: virtual ones where there are any (Java 21 and
+     * later), and pooled daemon ones otherwise
+     */
+    private static ExecutorService connectionThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = new Thread(runnable, "PathServer connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /* A request, and when its answer is due (0 for whenever it comes)
+     */
+    private static final class Pending {
+        final Future<String> answer;
+        final long deadline;
+
+        Pending(Future<String> answer, long deadline) {
+            this.answer = answer;
+            this.deadline = deadline;
+        }
+
+        static Pending answer(String answer) {
+            return new Pending(CompletableFuture.completedFuture(answer), 0);
+        }
+    }
+
+    /**
+     * Loads a graph and serves it until killed.
+     * @param args the vertex file, the edge file, and optionally the port (by
+     *      default 7170, on the loopback address; address:port listens on that
+     *      address instead, and *:port on all of them), the number of workers
+     *      (by default one per core), the timeout in milliseconds (by default
+     *      10000), and how to number the vertices (see VertexOrdering; by
+     *      default BFS)
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 6) {
+            System.out.println("Usage: PathServer <vertex file> <edge file> "
+                + "[[address:]port [workers [timeout ms [ordering]]]]");
+            return;
+        }
+        final String listen = args.length > 2 ? args[2] : "7170";
+        final int colon = listen.lastIndexOf(':');
+        final String host = colon < 0 ? null : listen.substring(0, colon);
+        final InetAddress address = host == null ? InetAddress.getLoopbackAddress()
+            : host.equals("*") ? null
+            : InetAddress.getByName(host);
+        final int workers = args.length > 3 ? Integer.parseInt(args[3])
+            : Runtime.getRuntime().availableProcessors();
+        final PathServer server = new PathServer(
+            new PathFinder(args[0], args[1], args.length > 5 ? VertexOrdering.valueOf(args[5]) : VertexOrdering.BFS),
+            address, Integer.parseInt(listen.substring(colon + 1)),
+            workers, workers * WINDOW,
+            args.length > 4 ? Long.parseLong(args[4]) : 10000);
+        System.out.println("Listening on " + (address == null ? "*" : address.getHostAddress())
+            + " port " + server.start());
+    }
+}
@@ -0,0 +1,679 @@
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Reusable scratch space for breadth-first searches over an Adjacency.
+ *
+ * A search needs to know, for every vertex, whether it has been reached and
+ * from where. Allocating (or clearing) an array of that size per query would
+ * make even a two-hop query cost O(V). Instead, every vertex carries an
+ * 'epoch' stamp: a vertex counts as visited only if its stamp equals the
+ * epoch of the current search, and starting a new search just bumps the
+ * epoch. So the cost of a query is proportional to what it touches.
+ *
+ * Contexts are not thread-safe; forThread() hands out one per thread, and
+ * it stays with that thread for as long as the thread lives. So every
+ * thread that searches keeps 12 bytes per vertex (parent, stamp and queue),
+ * and more only once it runs a search that needs them: 4 for depth, 4 for
+ * the marks of the vertices a search is looking for, and 16 for the
+ * backward half of a bidirectional search. A context keeps no graph
+ * between searches, so it never holds on to an old version of one.
+ *
+ * A thread can also give its searches a deadline (see withDeadline()).
+ * Searches check it every CHECK vertices they expand, and give up by
+ * throwing a CancellationException once it has passed; the next search
+ * starts a new epoch, so a search abandoned halfway leaves nothing behind.
+ */
+final class SearchContext {
+
+    /* One context per thread, grown on demand
+     */
+    private static final ThreadLocal<SearchContext> local =
+        ThreadLocal.withInitial(SearchContext::new);
+
+    /* Searches check their deadline whenever the number of vertices they
+     * have expanded is a multiple of CHECK + 1
+     */
+    private static final int CHECK = 1023;
+
+    /* parent[v] is the vertex whose expansion reached v. Only meaningful
+     * while stamp[v] == epoch.
+     */
+    private int[] parent = new int[0];
+    private int[] stamp = new int[0];
+    private int epoch;
+
+    /* Vertices waiting to be expanded. Each vertex is enqueued at most once
+     * per search, so a queue as long as the graph never wraps around.
+     */
+    private int[] queue = new int[0];
+
+    /* depth[v] is v's distance from the start, for searches that need it.
+     * This and the arrays below are empty until the first search that
+     * needs them (see need()).
+     */
+    private int[] depth = new int[0];
+
+    /* The backward half of a bidirectional search, mirroring the above:
+     * child[v] is the vertex after v on the way to the end, and backDepth[v]
+     * is v's distance to the end.
+     */
+    private int[] child = new int[0];
+    private int[] backStamp = new int[0];
+    private int[] backDepth = new int[0];
+    private int[] backQueue = new int[0];
+
+    /* Vertices a search is looking for (mark[v] == epoch) and has not yet
+     * reached
+     */
+    private int[] mark = new int[0];
+
+    /* A binary min-heap for guided searches. Each entry is an estimated path
+     * length in the high 32 bits and a vertex in the low 32.
+     */
+    private long[] heap = new long[16];
+
+    /* What the searches since the last nextEpoch() (or clearCounts()) did:
+     * vertices expanded, edges looked at, the most vertices waiting to be
+     * expanded at once, and the most levels explored. Each search keeps
+     * these in locals and adds them up once it is done, so they cost
+     * nothing per edge.
+     */
+    private long expanded;
+    private long scanned;
+    private int widest;
+    private int deepest;
+
+    /* When this thread's searches have to give up, as a System.nanoTime(),
+     * if hasDeadline
+     */
+    private boolean hasDeadline;
+    private long deadline;
+
+    private SearchContext() {}
+
+    /**
+     * Runs work with a deadline on every search it makes on this thread.
+     * @param deadline when to give up, as a System.nanoTime()
+     * @param work what to run
+     * @return what work returned
+     * @throws CancellationException if a search was still running at the deadline
+     */
+    static <T> T withDeadline(long deadline, Supplier<T> work) {
+        final SearchContext context = local.get();
+        final boolean hadDeadline = context.hasDeadline;
+        final long previous = context.deadline;
+        context.hasDeadline = true;
+        context.deadline = hadDeadline ? Math.min(previous, deadline) : deadline;
+        try {
+            return work.get();
+        } finally {
+            context.hasDeadline = hadDeadline;
+            context.deadline = previous;
+        }
+    }
+
+    /* Gives up on the current search if its deadline has passed. Called with
+     * the number of vertices expanded so far, and only looks at the clock
+     * every CHECK + 1 of them.
+     */
+    private void checkDeadline(int expanded) {
+        if ((expanded & CHECK) == 0 && hasDeadline && System.nanoTime() - deadline > 0) {
+            throw new CancellationException("Search ran past its deadline");
+        }
+    }
+
+    /**
+     * @param vertices the number of vertices the caller is about to search
+     * @return this thread's context, large enough for that many vertices
+     */
+    static SearchContext forThread(int vertices) {
+        final SearchContext context = local.get();
+        context.ensureCapacity(vertices);
+        return context;
+    }
+
+    private void ensureCapacity(int vertices) {
+        if (stamp.length < vertices) {
+            // A graph that has grown once (see LiveGraph) will likely grow
+            // again, so leave it some room. The arrays only some searches
+            // need are dropped, and made again at this size when needed.
+            final int size = stamp.length == 0 ? vertices : Math.max(vertices, stamp.length + (stamp.length >> 3));
+            parent = new int[size];
+            stamp = new int[size];
+            queue = new int[size];
+            depth = new int[0];
+            child = new int[0];
+            backStamp = new int[0];
+            backDepth = new int[0];
+            backQueue = new int[0];
+            mark = new int[0];
+            epoch = 0;
+        }
+    }
+
+    /* array, if it is as large as the others, or else a new one that is.
+     * A new array's stamps are all 0, which is never a current epoch.
+     */
+    private int[] need(int[] array) {
+        return array.length == stamp.length ? array : new int[stamp.length];
+    }
+
+    /* Makes the backward half of a bidirectional search, if it isn't yet
+     */
+    private void needBackward() {
+        child = need(child);
+        backStamp = need(backStamp);
+        backDepth = need(backDepth);
+        backQueue = need(backQueue);
+    }
+
+    /* Starts a new search, forgetting everything the last one visited
+     */
+    private void nextEpoch() {
+        clearCounts();
+        if (++epoch == 0) {
+            // Once every 2^32 searches the stamps could collide with an old
+            // epoch, so actually clear them
+            Arrays.fill(stamp, 0);
+            Arrays.fill(backStamp, 0);
+            Arrays.fill(mark, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * Forgets what earlier searches did (see expanded() and the like).
+     */
+    void clearCounts() {
+        expanded = 0;
+        scanned = 0;
+        widest = 0;
+        deepest = 0;
+    }
+
+    /**
+     * @return how many vertices the searches since clearCounts() expanded
+     */
+    long expanded() {
+        return expanded;
+    }
+
+    /**
+     * @return how many edges the searches since clearCounts() looked at
+     */
+    long scanned() {
+        return scanned;
+    }
+
+    /**
+     * @return the most vertices waiting to be expanded at once (a search's
+     *      frontier), in the searches since clearCounts()
+     */
+    int widest() {
+        return widest;
+    }
+
+    /**
+     * @return the most levels (distance from where they started) the searches
+     *      since clearCounts() explored
+     */
+    int deepest() {
+        return deepest;
+    }
+
+    private void count(int expanded, long scanned, int widest, int deepest) {
+        this.expanded += expanded;
+        this.scanned += scanned;
+        this.widest = Math.max(this.widest, widest);
+        this.deepest = Math.max(this.deepest, deepest);
+    }
+
+    /**
+     * Breadth-first search from start to end.
+     * @param graph the graph to search
+     * @param start the first vertex of the path
+     * @param end the last vertex of the path
+     * @return a shortest path as an array running from start to end, or null if
+     *      there is no such path
+     */
+    int[] shortestPath(Adjacency graph, int start, int end) {
+        final Adjacency.Cursor neighbors = graph.cursor();
+        nextEpoch();
+        stamp[start] = epoch;
+        parent[start] = start;
+
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        long edges = 0;
+        int frontier = 0;
+
+        while (head < tail) {
+            frontier = Math.max(frontier, tail - head);
+            final int step = queue[head++];
+            checkDeadline(head);
+            if (step == end) {
+                count(head, edges, frontier, 0);
+                return backtrack(start, end);
+            }
+            neighbors.reset(step);
+            for (int neighbor = neighbors.next(); neighbor >= 0; neighbor = neighbors.next()) {
+                edges++;
+                if (stamp[neighbor] != epoch) {
+                    stamp[neighbor] = epoch;
+                    parent[neighbor] = step;
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+        count(head, edges, frontier, 0);
+        return null;
+    }
+
+    /**
+     * One breadth-first search from start that finds a path to each of several
+     * ends, stopping as soon as every end has been reached.
+     * @param graph the graph to search
+     * @param start the first vertex of every path
+     * @param ends the last vertex of each path (negative entries are ignored)
+     * @return for each entry in ends, a shortest path from start to it, or null
+     *      if there is no such path
+     */
+    int[][] pathsFrom(Adjacency graph, int start, int[] ends) {
+        depth = need(depth);
+        mark = need(mark);
+        nextEpoch();
+        reach(graph.cursor(), start, stamp, parent, depth, queue, want(ends));
+
+        final int[][] paths = new int[ends.length][];
+        for (int i = 0; i < ends.length; i++) {
+            if (ends[i] >= 0 && stamp[ends[i]] == epoch) {
+                paths[i] = backtrack(start, ends[i]);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Searches forwards from start until it has reached every one of vias (or
+     * everything it can), and then backwards from end until it has reached
+     * every one of those the first search reached, since no path goes through
+     * the others. If the first reached none, there is no second. Afterwards, and until
+     * the next search on this context, distanceFrom(), distanceTo() and
+     * pathThrough() describe the paths through each of vias.
+     * @param graph the graph to search
+     * @param reverse graph.reverse()
+     * @param start the first vertex of the paths
+     * @param vias the vertices the paths may go through
+     * @param end the last vertex of the paths
+     */
+    void searchAround(Adjacency graph, Adjacency reverse, int start, int[] vias, int end) {
+        depth = need(depth);
+        mark = need(mark);
+        needBackward();
+        nextEpoch();
+        reach(graph.cursor(), start, stamp, parent, depth, queue, want(vias));
+        unwant(vias);
+        final int reached = wantReached(vias);
+        if (reached > 0) {
+            reach(reverse.cursor(), end, backStamp, child, backDepth, backQueue, reached);
+        }
+    }
+
+    /**
+     * @param v a vertex
+     * @return its distance from the start of the last searchAround(), or -1 if
+     *      that search did not reach it
+     */
+    int distanceFrom(int v) {
+        return stamp[v] == epoch ? depth[v] : -1;
+    }
+
+    /**
+     * @param v a vertex
+     * @return its distance to the end of the last searchAround(), or -1 if that
+     *      search did not reach it
+     */
+    int distanceTo(int v) {
+        return backStamp[v] == epoch ? backDepth[v] : -1;
+    }
+
+    /**
+     * @param via a vertex
+     * @return a shortest path from the start of the last searchAround() through
+     *      via to its end, or null if that search found none
+     */
+    int[] pathThrough(int via) {
+        if (distanceFrom(via) < 0 || distanceTo(via) < 0) {
+            return null;
+        }
+        final int[] path = new int[depth[via] + backDepth[via] + 1];
+        for (int v = via, i = depth[via]; i >= 0; v = parent[v], i--) {
+            path[i] = v;
+        }
+        for (int v = via, i = depth[via]; i < path.length; v = child[v], i++) {
+            path[i] = v;
+        }
+        return path;
+    }
+
+    /* Marks the distinct, non-negative entries of vertices as wanted, and
+     * returns how many there are
+     */
+    private int want(int[] vertices) {
+        int wanted = 0;
+        for (int v : vertices) {
+            if (v >= 0 && mark[v] != epoch) {
+                mark[v] = epoch;
+                wanted++;
+            }
+        }
+        return wanted;
+    }
+
+    /* As want(), but only for the vertices the forward side of this search
+     * has reached
+     */
+    private int wantReached(int[] vertices) {
+        int wanted = 0;
+        for (int v : vertices) {
+            if (v >= 0 && stamp[v] == epoch && mark[v] != epoch) {
+                mark[v] = epoch;
+                wanted++;
+            }
+        }
+        return wanted;
+    }
+
+    /* Clears the marks left by want() on vertices a search did not reach
+     */
+    private void unwant(int[] vertices) {
+        for (int v : vertices) {
+            if (v >= 0) {
+                mark[v] = 0;
+            }
+        }
+    }
+
+    /* Breadth-first search from source, recording into the given arrays (one
+     * side's worth of the fields above), until 'wanted' marked vertices have
+     * been reached. Reached vertices are unmarked as they are found.
+     */
+    private void reach(Adjacency.Cursor neighbors, int source,
+            int[] seen, int[] from, int[] distance, int[] queue, int wanted) {
+        seen[source] = epoch;
+        from[source] = source;
+        distance[source] = 0;
+        if (mark[source] == epoch) {
+            mark[source] = 0;
+            wanted--;
+        }
+
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        long edges = 0;
+        int frontier = 0;
+
+        while (head < tail && wanted > 0) {
+            frontier = Math.max(frontier, tail - head);
+            final int step = queue[head++];
+            checkDeadline(head);
+            neighbors.reset(step);
+            for (int neighbor = neighbors.next(); neighbor >= 0; neighbor = neighbors.next()) {
+                edges++;
+                if (seen[neighbor] != epoch) {
+                    seen[neighbor] = epoch;
+                    from[neighbor] = step;
+                    distance[neighbor] = distance[step] + 1;
+                    queue[tail++] = neighbor;
+                    if (mark[neighbor] == epoch) {
+                        mark[neighbor] = 0;
+                        wanted--;
+                    }
+                }
+            }
+        }
+        count(head, edges, frontier, distance[queue[tail - 1]]);
+    }
+
+    /**
+     * Bidirectional breadth-first search from start to end. One search runs
+     * forward from start over graph, the other backward from end over its
+     * reverse, a whole level at a time, always advancing whichever side has
+     * the smaller frontier. Each time an edge joins the two sides, the path
+     * through it is a candidate. No undiscovered path can be shorter than
+     * the two frontier depths plus the edge between them, so the search
+     * stops as soon as the best candidate is at least that short.
+     * @param graph the graph to search
+     * @param reverse graph.reverse()
+     * @param start the first vertex of the path
+     * @param end the last vertex of the path
+     * @return a shortest path as an array running from start to end, or null if
+     *      there is no such path
+     */
+    int[] bidirectionalPath(Adjacency graph, Adjacency reverse, int start, int end) {
+        if (start == end) {
+            clearCounts();
+            return new int[] { start };
+        }
+        final Adjacency.Cursor outLinks = graph.cursor();
+        final Adjacency.Cursor inLinks = reverse.cursor();
+        depth = need(depth);
+        needBackward();
+        nextEpoch();
+
+        stamp[start] = epoch;
+        parent[start] = start;
+        depth[start] = 0;
+        queue[0] = start;
+        int head = 0;
+        int tail = 1;
+        int reached = 0;
+
+        backStamp[end] = epoch;
+        child[end] = end;
+        backDepth[end] = 0;
+        backQueue[0] = end;
+        int backHead = 0;
+        int backTail = 1;
+        int backReached = 0;
+
+        // The best join found so far: the edge meetFrom -> meetTo, where
+        // meetFrom was reached from start and meetTo reaches end
+        int best = Integer.MAX_VALUE;
+        int meetFrom = -1;
+        int meetTo = -1;
+        long edges = 0;
+        int frontier = 1;
+
+        while (head < tail && backHead < backTail && best > reached + backReached + 1) {
+            if (tail - head <= backTail - backHead) {
+                frontier = Math.max(frontier, tail - head);
+                final int levelEnd = tail;
+                for (; head < levelEnd; head++) {
+                    final int step = queue[head];
+                    checkDeadline(head + backHead);
+                    outLinks.reset(step);
+                    for (int neighbor = outLinks.next(); neighbor >= 0; neighbor = outLinks.next()) {
+                        edges++;
+                        if (backStamp[neighbor] == epoch
+                                && depth[step] + 1 + backDepth[neighbor] < best) {
+                            best = depth[step] + 1 + backDepth[neighbor];
+                            meetFrom = step;
+                            meetTo = neighbor;
+                        }
+                        if (stamp[neighbor] != epoch) {
+                            stamp[neighbor] = epoch;
+                            parent[neighbor] = step;
+                            depth[neighbor] = depth[step] + 1;
+                            queue[tail++] = neighbor;
+                        }
+                    }
+                }
+                reached++;
+            } else {
+                frontier = Math.max(frontier, backTail - backHead);
+                final int levelEnd = backTail;
+                for (; backHead < levelEnd; backHead++) {
+                    final int step = backQueue[backHead];
+                    checkDeadline(head + backHead);
+                    inLinks.reset(step);
+                    for (int neighbor = inLinks.next(); neighbor >= 0; neighbor = inLinks.next()) {
+                        edges++;
+                        if (stamp[neighbor] == epoch
+                                && depth[neighbor] + 1 + backDepth[step] < best) {
+                            best = depth[neighbor] + 1 + backDepth[step];
+                            meetFrom = neighbor;
+                            meetTo = step;
+                        }
+                        if (backStamp[neighbor] != epoch) {
+                            backStamp[neighbor] = epoch;
+                            child[neighbor] = step;
+                            backDepth[neighbor] = backDepth[step] + 1;
+                            backQueue[backTail++] = neighbor;
+                        }
+                    }
+                }
+                backReached++;
+            }
+        }
+        count(head + backHead, edges, frontier, reached + backReached);
+
+        if (meetFrom < 0) {
+            return null;
+        }
+        final int[] path = new int[best + 1];
+        for (int v = meetFrom, i = depth[meetFrom]; i >= 0; v = parent[v], i--) {
+            path[i] = v;
+        }
+        for (int v = meetTo, i = depth[meetFrom] + 1; i <= best; v = child[v], i++) {
+            path[i] = v;
+        }
+        return path;
+    }
+
+    /**
+     * A* search from start to end, guided by estimate, which must be a lower
+     * bound on the distance from a vertex to end that never drops by more than
+     * one along an edge (as landmark bounds are). Vertices it says cannot
+     * reach end at all are never expanded.
+     * @param graph the graph to search
+     * @param start the first vertex of the path
+     * @param end the last vertex of the path
+     * @param estimate a lower bound on the distance from each vertex to end, or
+     *      -1 if there is no path from that vertex to end
+     * @return a shortest path as an array running from start to end, or null if
+     *      there is no such path
+     */
+    int[] guidedPath(Adjacency graph, int start, int end, IntUnaryOperator estimate) {
+        final Adjacency.Cursor neighbors = graph.cursor();
+        depth = need(depth);
+        backStamp = need(backStamp);
+        nextEpoch();
+
+        // stamp and depth are the best known distance from start; backStamp
+        // marks vertices that are done (have been expanded)
+        stamp[start] = epoch;
+        parent[start] = start;
+        depth[start] = 0;
+        int size = 0;
+        final int first = estimate.applyAsInt(start);
+        if (first >= 0) {
+            size = push(size, first, start);
+        }
+        int done = 0;
+        long edges = 0;
+        int frontier = 0;
+        int levels = 0;
+
+        while (size > 0) {
+            frontier = Math.max(frontier, size);
+            final int step = (int) heap[0];
+            size = pop(size);
+            if (backStamp[step] == epoch) {
+                continue;
+            }
+            if (step == end) {
+                count(done, edges, frontier, depth[end]);
+                return backtrack(start, end);
+            }
+            backStamp[step] = epoch;
+            checkDeadline(++done);
+            levels = Math.max(levels, depth[step]);
+
+            neighbors.reset(step);
+            for (int neighbor = neighbors.next(); neighbor >= 0; neighbor = neighbors.next()) {
+                edges++;
+                if (backStamp[neighbor] != epoch
+                        && (stamp[neighbor] != epoch || depth[step] + 1 < depth[neighbor])) {
+                    final int remaining = estimate.applyAsInt(neighbor);
+                    if (remaining >= 0) {
+                        stamp[neighbor] = epoch;
+                        parent[neighbor] = step;
+                        depth[neighbor] = depth[step] + 1;
+                        size = push(size, depth[neighbor] + remaining, neighbor);
+                    }
+                }
+            }
+        }
+        count(done, edges, frontier, levels);
+        return null;
+    }
+
+    /* Adds v, keyed by priority, to the first size entries of the heap, and
+     * returns the new size
+     */
+    private int push(int size, int priority, int v) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        final long entry = ((long) priority << 32) | v;
+        int i = size;
+        while (i > 0 && heap[(i - 1) / 2] > entry) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = entry;
+        return size + 1;
+    }
+
+    /* Removes the smallest of the first size entries of the heap, and returns
+     * the new size
+     */
+    private int pop(int size) {
+        final long last = heap[--size];
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int smaller = 2 * i + 1;
+            if (smaller + 1 < size && heap[smaller + 1] < heap[smaller]) {
+                smaller++;
+            }
+            if (heap[smaller] >= last) {
+                break;
+            }
+            heap[i] = heap[smaller];
+            i = smaller;
+        }
+        heap[i] = last;
+        return size;
+    }
+
+    /* Follows parent pointers from end back to start. The result (and the
+     * search's cursors) are the only allocations a search makes.
+     */
+    private int[] backtrack(int start, int end) {
+        int length = 1;
+        for (int v = end; v != start; v = parent[v]) {
+            length++;
+        }
+        final int[] path = new int[length];
+        for (int v = end, i = length - 1; i >= 0; v = parent[v], i--) {
+            path[i] = v;
+        }
+        return path;
+    }
+}
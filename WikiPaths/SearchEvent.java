@@ -0,0 +1,47 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event for one PathFinder search (see SearchMetrics).
+ * Enable "wikipaths.Search" in a recording to get one per search, with a
+ * stack trace. When no recording has it enabled, it costs a single check.
+ */
+@Name("wikipaths.Search")
+@Label("Path Search")
+@Category("WikiPaths")
+@Description("One shortest path search, and how much of the graph it covered")
+final class SearchEvent extends jdk.jfr.Event {
+
+    @Label("From")
+    String from;
+
+    @Label("To")
+    String to;
+
+    @Label("Length")
+    @Description("Links in the path found, or -1 if there is none")
+    int length;
+
+    @Label("Expanded")
+    @Description("Articles whose links were followed")
+    long expanded;
+
+    @Label("Scanned")
+    @Description("Links looked at")
+    long scanned;
+
+    @Label("Widest Frontier")
+    @Description("The most articles waiting to be expanded at once")
+    int widest;
+
+    @Label("Depth")
+    @Description("The most levels explored")
+    int depth;
+
+    @Label("CPU Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long cpuTime;
+}
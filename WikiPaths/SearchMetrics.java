@@ -0,0 +1,162 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Aggregated statistics about every search a PathFinder runs (cache hits are
+ * not searches): histograms of their latency and of how much of the graph
+ * they covered, the slowest one so far, and each thread's latest one.
+ *
+ * The same numbers are published per search as Flight Recorder events (see
+ * SearchEvent) whenever a recording has those enabled, with or without
+ * metrics. With neither, measure() adds one check to each search.
+ */
+public final class SearchMetrics {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram foundLatency = new LatencyHistogram();
+    private final LatencyHistogram missingLatency = new LatencyHistogram();
+    private final LatencyHistogram cpuTime = new LatencyHistogram();
+    private final LatencyHistogram expanded = new LatencyHistogram();
+    private final LatencyHistogram scanned = new LatencyHistogram();
+
+    private final AtomicReference<SearchStats> slowest = new AtomicReference<SearchStats>();
+    private final ThreadLocal<SearchStats> latest = new ThreadLocal<SearchStats>();
+
+    SearchMetrics() {}
+
+    /**
+     * Runs a search, and records what it did in metrics and as a SearchEvent.
+     * @param metrics where to record the search, or null for nowhere
+     * @param context the context the search runs on
+     * @param articles names the ends, for the record
+     * @param start the first vertex of the path
+     * @param end the last vertex of the path
+     * @param search runs the search on context
+     * @return what search returned
+     */
+    static int[] measure(SearchMetrics metrics, SearchContext context, ArticleIndex articles,
+            int start, int end, Supplier<int[]> search) {
+        final SearchEvent event = new SearchEvent();
+        if (metrics == null && !event.isEnabled()) {
+            return search.get();
+        }
+
+        context.clearCounts();
+        final long cpu = threadCpuTime();
+        event.begin();
+        final long started = System.nanoTime();
+        final int[] path = search.get();
+        final long wall = System.nanoTime() - started;
+        event.end();
+        final long used = cpu < 0 ? -1 : threadCpuTime() - cpu;
+
+        final SearchStats stats = new SearchStats(
+            start < 0 ? "?" : articles.name(start), end < 0 ? "?" : articles.name(end),
+            path == null ? -1 : path.length - 1,
+            context.expanded(), context.scanned(), context.widest(), context.deepest(), wall, used);
+        if (event.shouldCommit()) {
+            event.from = stats.from();
+            event.to = stats.to();
+            event.length = stats.length();
+            event.expanded = stats.expanded();
+            event.scanned = stats.scanned();
+            event.widest = stats.widestFrontier();
+            event.depth = stats.depth();
+            event.cpuTime = used;
+            event.commit();
+        }
+        if (metrics != null) {
+            metrics.record(stats);
+        }
+        return path;
+    }
+
+    private static long threadCpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    private void record(SearchStats stats) {
+        latency.record(stats.wallNanos());
+        (stats.length() < 0 ? missingLatency : foundLatency).record(stats.wallNanos());
+        if (stats.cpuNanos() >= 0) {
+            cpuTime.record(stats.cpuNanos());
+        }
+        expanded.record(stats.expanded());
+        scanned.record(stats.scanned());
+        latest.set(stats);
+        for (SearchStats old = slowest.get();
+                (old == null || stats.wallNanos() > old.wallNanos()) && !slowest.compareAndSet(old, stats);
+                old = slowest.get()) {
+            // Lost a race with another thread's slowest search; try again
+        }
+    }
+
+    /**
+     * @return the wall-clock time of every search, in nanoseconds
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    /**
+     * @return the wall-clock time of searches that found a path, in nanoseconds
+     */
+    public LatencyHistogram foundLatency() {
+        return foundLatency;
+    }
+
+    /**
+     * @return the wall-clock time of searches that found there was no path (or
+     *      were for articles that don't exist), in nanoseconds
+     */
+    public LatencyHistogram missingLatency() {
+        return missingLatency;
+    }
+
+    /**
+     * @return the CPU time of every search, in nanoseconds (if the JVM can tell)
+     */
+    public LatencyHistogram cpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * @return how many articles each search expanded
+     */
+    public LatencyHistogram expanded() {
+        return expanded;
+    }
+
+    /**
+     * @return how many links each search looked at
+     */
+    public LatencyHistogram scanned() {
+        return scanned;
+    }
+
+    /**
+     * @return the slowest search so far, or null if there have been none
+     */
+    public SearchStats slowest() {
+        return slowest.get();
+    }
+
+    /**
+     * @return the calling thread's latest search, or null if it hasn't run one
+     */
+    public SearchStats latest() {
+        return latest.get();
+    }
+
+    @Override
+    public String toString() {
+        return "latency: " + latency + "\nfound: " + foundLatency + "\nno path: " + missingLatency
+            + "\nexpanded: n=" + expanded.count() + " mean=" + Math.round(expanded.mean())
+            + " p99=" + expanded.percentile(99) + " max=" + expanded.max()
+            + "\nslowest: " + slowest.get();
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * What one search did: which pair it was for, what it found, how much of the
+ * graph it had to cover to find it, and how long that took. Enough to tell a
+ * query that fanned out through a hub from one that ran out of graph, or one
+ * that was simply stalled (wall time far above CPU time).
+ */
+public final class SearchStats {
+
+    private final String from;
+    private final String to;
+    private final int length;
+    private final long expanded;
+    private final long scanned;
+    private final int widest;
+    private final int depth;
+    private final long wallNanos;
+    private final long cpuNanos;
+
+    SearchStats(String from, String to, int length, long expanded, long scanned,
+            int widest, int depth, long wallNanos, long cpuNanos) {
+        this.from = from;
+        this.to = to;
+        this.length = length;
+        this.expanded = expanded;
+        this.scanned = scanned;
+        this.widest = widest;
+        this.depth = depth;
+        this.wallNanos = wallNanos;
+        this.cpuNanos = cpuNanos;
+    }
+
+    /**
+     * @return the name of the article the search started from
+     */
+    public String from() {
+        return from;
+    }
+
+    /**
+     * @return the name of the article the search was for
+     */
+    public String to() {
+        return to;
+    }
+
+    /**
+     * @return the length of the path found, or -1 if there was none
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return how many articles the search expanded (took off its queue and
+     *      followed the links of). 0 if the search was answered without one.
+     */
+    public long expanded() {
+        return expanded;
+    }
+
+    /**
+     * @return how many links the search looked at
+     */
+    public long scanned() {
+        return scanned;
+    }
+
+    /**
+     * @return the most articles that were waiting to be expanded at once
+     */
+    public int widestFrontier() {
+        return widest;
+    }
+
+    /**
+     * @return the most levels (links away from where it started) the search
+     *      explored
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * @return how long the search took, in nanoseconds
+     */
+    public long wallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * @return how much CPU time the search's thread used, in nanoseconds, or -1
+     *      if the JVM can't tell
+     */
+    public long cpuNanos() {
+        return cpuNanos;
+    }
+
+    @Override
+    public String toString() {
+        return from + " -> " + to + ": length " + length + ", " + expanded + " expanded, "
+            + scanned + " scanned, frontier " + widest + ", depth " + depth + ", "
+            + wallNanos / 1000 + "us wall, " + (cpuNanos < 0 ? "?" : cpuNanos / 1000 + "us") + " cpu";
+    }
+}
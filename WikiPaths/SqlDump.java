@@ -0,0 +1,448 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the rows of one table out of a MySQL dump, as wikipedia publishes
+ * them (enwiki-...-page.sql.gz and so on), straight from the gzipped file.
+ *
+ * Such a dump is a CREATE TABLE statement, which names the columns, then
+ * INSERT statements of a few thousand rows each, one per line. The file is
+ * streamed through its FileChannel (and a GZIPInputStream, if it is
+ * gzipped), so it is never decompressed to disk. Decompressing has to
+ * happen in order, on one thread; parsing doesn't, so whole lines are
+ * handed out in batches of roughly BATCH bytes, each parsed on a core of
+ * its own while the next one is decompressed.
+ *
+ * Rows are parsed in place: a Row only records where each of its fields is
+ * in the batch, so nothing is allocated for the fields nobody asks about.
+ * Titles (see Row.title()) come out url-encoded, the way the names in
+ * vertex files are, so they go into an ArticleDictionary as they are and
+ * are only decoded for display.
+ */
+final class SqlDump implements Closeable {
+
+    /* Roughly how many bytes of statements each thread parses at a time
+     */
+    private static final int BATCH = 16 << 20;
+
+    /* How many bytes are decompressed at a time
+     */
+    private static final int READ = 1 << 20;
+
+    private static final byte[] INSERT = "INSERT INTO ".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private final String file;
+    private final InputStream in;
+    private final List<String> columns;
+
+    /* What has been read but not handed out yet: buffer[0] up to filled,
+     * always starting at the start of a line
+     */
+    private byte[] buffer = new byte[BATCH + READ];
+    private int filled;
+    private boolean done;
+
+    /* Rows with the wrong number of fields, or that can't be parsed at all
+     */
+    private final AtomicLong malformed = new AtomicLong();
+
+    /**
+     * Opens a dump and reads up to its first row.
+     * @param file the dump, gzipped or not
+     * @param table the table it is a dump of
+     * @throws IOException if the file can't be read, or has no CREATE TABLE
+     *      statement for table before its first row
+     */
+    SqlDump(String file, String table) throws IOException {
+        this.file = file;
+        final FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        try {
+            // Gzip files start with 1f 8b
+            final ByteBuffer magic = ByteBuffer.allocate(2);
+            channel.read(magic, 0);
+            final InputStream raw = Channels.newInputStream(channel);
+            this.in = magic.get(0) == (byte) 0x1f && magic.get(1) == (byte) 0x8b
+                ? new GZIPInputStream(raw, READ)
+                : raw;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        // The column names are the lines of the CREATE TABLE statement that
+        // start with a quoted name. Everything up to the first INSERT is
+        // read, and then dropped.
+        final List<String> names = new ArrayList<String>();
+        boolean creating = false;
+        int start = 0;
+        while (true) {
+            final int end = lineEnd(start);
+            if (end < 0) {
+                close();
+                throw new IOException(file + " has no rows of " + table);
+            }
+            if (startsWith(buffer, start, end, INSERT)) {
+                break;
+            }
+            final String line = new String(buffer, start, end - start, StandardCharsets.UTF_8).trim();
+            if (line.startsWith("CREATE TABLE `" + table + "`")) {
+                creating = true;
+            } else if (creating && line.startsWith("`")) {
+                names.add(line.substring(1, line.indexOf('`', 1)));
+            } else if (creating && line.startsWith(")")) {
+                creating = false;
+            }
+            start = end + 1;
+        }
+        if (names.isEmpty()) {
+            close();
+            throw new IOException(file + " is not a dump of " + table);
+        }
+        this.columns = names;
+        System.arraycopy(buffer, start, buffer, 0, filled - start);
+        filled -= start;
+    }
+
+    /**
+     * @param name the name of a column
+     * @return its index among the fields of a row
+     * @throws IOException if the table has no such column
+     */
+    int column(String name) throws IOException {
+        final int index = columns.indexOf(name);
+        if (index < 0) {
+            throw new IOException(file + " has no column " + name + " (only " + columns + ")");
+        }
+        return index;
+    }
+
+    /**
+     * @param name the name of a column
+     * @return whether the table has it
+     */
+    boolean hasColumn(String name) {
+        return columns.contains(name);
+    }
+
+    /**
+     * Parses every row, in parallel batches, and closes the dump.
+     * @param batch makes what one batch's rows are collected into
+     * @param handler collects a row. Called on any thread, but for each
+     *      batch, on one thread and in order. The row is only valid during
+     *      the call.
+     * @return what each batch's rows were collected into, in file order
+     * @throws IOException if the file can't be read
+     */
+    <T> List<T> rows(Supplier<T> batch, BiConsumer<T,Row> handler) throws IOException {
+
+        // At most a couple of batches per core are read ahead, so memory
+        // stays bounded however large the dump is
+        final int ahead = Runtime.getRuntime().availableProcessors() + 1;
+        final ArrayDeque<CompletableFuture<T>> parsing = new ArrayDeque<CompletableFuture<T>>();
+        final List<T> results = new ArrayList<T>();
+        try {
+            for (byte[] lines = next(); lines != null; lines = next()) {
+                final byte[] statements = lines;
+                parsing.add(CompletableFuture.supplyAsync(() -> {
+                    final T collected = batch.get();
+                    parse(statements, row -> handler.accept(collected, row));
+                    return collected;
+                }));
+                if (parsing.size() > ahead) {
+                    results.add(parsing.remove().join());
+                }
+            }
+            while (!parsing.isEmpty()) {
+                results.add(parsing.remove().join());
+            }
+            return results;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * @return how many rows had the wrong number of fields, or couldn't be
+     *      parsed, and were skipped
+     */
+    long malformed() {
+        return malformed.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /* The next batch of whole lines, or null at the end of the file
+     */
+    private byte[] next() throws IOException {
+        while (!done && filled < BATCH) {
+            if (filled + READ > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, filled + READ));
+            }
+            final int read = in.read(buffer, filled, READ);
+            if (read < 0) {
+                done = true;
+            } else {
+                filled += read;
+            }
+        }
+
+        // Up to the last line break, or everything at the end of the file.
+        // A line longer than a batch makes the batch longer.
+        int cut = filled;
+        if (!done) {
+            while (cut > 0 && buffer[cut - 1] != '\n') {
+                cut--;
+            }
+            if (cut == 0) {
+                final int end = lineEnd(0);
+                cut = end < 0 ? filled : end + 1;
+            }
+        }
+        if (cut == 0) {
+            return null;
+        }
+        final byte[] lines = Arrays.copyOf(buffer, cut);
+        System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+        filled -= cut;
+        return lines;
+    }
+
+    /* The index of the line break ending the line that starts at start,
+     * reading more as needed, or -1 if the file ends first
+     */
+    private int lineEnd(int start) throws IOException {
+        int end = start;
+        while (true) {
+            while (end < filled && buffer[end] != '\n') {
+                end++;
+            }
+            if (end < filled) {
+                return end;
+            } else if (done) {
+                return -1;
+            }
+            if (filled + READ > buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            final int read = in.read(buffer, filled, READ);
+            if (read < 0) {
+                done = true;
+            } else {
+                filled += read;
+            }
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private interface RowHandler {
+        void accept(Row row);
+    }
+
+    /* Finds every row of every INSERT statement in lines. Other lines are
+     * ignored.
+     */
+    private void parse(byte[] lines, RowHandler handler) {
+        final Row row = new Row(lines, columns.size());
+        for (int start = 0; start < lines.length; ) {
+            int end = start;
+            while (end < lines.length && lines[end] != '\n') {
+                end++;
+            }
+            if (startsWith(lines, start, end, INSERT)) {
+                // Rows start after "VALUES "
+                int at = start + INSERT.length;
+                while (at < end && lines[at] != '(') {
+                    at++;
+                }
+                while (at < end && lines[at] == '(') {
+                    at = row.parse(at + 1, end);
+                    if (at < 0) {
+                        // Nothing after a row that can't be parsed can be
+                        // trusted, so the rest of the statement goes too
+                        malformed.incrementAndGet();
+                        break;
+                    } else if (row.fields == columns.size()) {
+                        handler.accept(row);
+                    } else {
+                        malformed.incrementAndGet();
+                    }
+                    // Past the ')', and the ',' before the next row (or the
+                    // ';' after the last)
+                    at += 2;
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * One row of a table, as ranges of the bytes it was parsed from.
+     */
+    static final class Row {
+
+        private final byte[] bytes;
+
+        /* Field i is bytes[starts[i]] to bytes[ends[i] - 1], still escaped if
+         * it is a string
+         */
+        private final int[] starts;
+        private final int[] ends;
+        private final boolean[] quoted;
+        private int fields;
+
+        /* Where title() puts its result
+         */
+        private byte[] encoded = new byte[256];
+
+        private Row(byte[] bytes, int columns) {
+            this.bytes = bytes;
+            this.starts = new int[columns];
+            this.ends = new int[columns];
+            this.quoted = new boolean[columns];
+        }
+
+        /* Finds the fields of the row starting at at (just after its '('),
+         * returning the index of its ')', or -1 if it doesn't end before end
+         */
+        private int parse(int at, int end) {
+            fields = 0;
+            while (at < end) {
+                final boolean string = bytes[at] == '\'';
+                final int start = string ? at + 1 : at;
+                at = start;
+                if (string) {
+                    while (at < end && bytes[at] != '\'') {
+                        at += bytes[at] == '\\' ? 2 : 1;
+                    }
+                    if (at >= end) {
+                        return -1;
+                    }
+                } else {
+                    while (at < end && bytes[at] != ',' && bytes[at] != ')') {
+                        at++;
+                    }
+                }
+                if (fields < starts.length) {
+                    starts[fields] = start;
+                    ends[fields] = at;
+                    quoted[fields] = string;
+                }
+                fields++;
+                at += string ? 1 : 0;
+                if (at >= end) {
+                    return -1;
+                } else if (bytes[at] == ')') {
+                    return at;
+                } else if (bytes[at] != ',') {
+                    return -1;
+                }
+                at++;
+            }
+            return -1;
+        }
+
+        /**
+         * @param column a column holding an integer
+         * @return its value, or -1 if it is NULL or not a number
+         */
+        long number(int column) {
+            long value = 0;
+            boolean negative = false;
+            for (int i = starts[column]; i < ends[column]; i++) {
+                final byte digit = bytes[i];
+                if (digit == '-' && i == starts[column]) {
+                    negative = true;
+                } else if (digit >= '0' && digit <= '9') {
+                    value = value * 10 + digit - '0';
+                } else {
+                    return -1;
+                }
+            }
+            return ends[column] == starts[column] ? -1 : negative ? -value : value;
+        }
+
+        /**
+         * Unescapes a string column and url-encodes it (as
+         * java.net.URLEncoder does, from UTF-8), which is how vertex files
+         * name articles.
+         * @param column a column holding a title
+         * @return how many bytes of encoded() it now fills
+         */
+        int title(int column) {
+            int length = 0;
+            for (int i = starts[column]; i < ends[column]; i++) {
+                byte b = bytes[i];
+                if (quoted[column] && b == '\\' && i + 1 < ends[column]) {
+                    b = unescape(bytes[++i]);
+                }
+                if (length + 3 > encoded.length) {
+                    encoded = Arrays.copyOf(encoded, encoded.length * 2);
+                }
+                if (b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9'
+                        || b == '.' || b == '-' || b == '*' || b == '_') {
+                    encoded[length++] = b;
+                } else if (b == ' ') {
+                    encoded[length++] = '+';
+                } else {
+                    encoded[length++] = '%';
+                    encoded[length++] = HEX[(b >> 4) & 15];
+                    encoded[length++] = HEX[b & 15];
+                }
+            }
+            return length;
+        }
+
+        /**
+         * @return the bytes of the last title()
+         */
+        byte[] encoded() {
+            return encoded;
+        }
+
+        /* The character a backslash escape in a MySQL string stands for
+         */
+        private static byte unescape(byte escaped) {
+            switch (escaped) {
+                case '0': return 0;
+                case 'b': return '\b';
+                case 'n': return '\n';
+                case 'r': return '\r';
+                case 't': return '\t';
+                case 'Z': return 26;
+                default: return escaped;
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * A renumbering of a graph's vertices, chosen for cache locality (see
+ * VertexOrdering), and the record of it that keeps the renumbering from
+ * showing outside of PathFinder.
+ *
+ * Ids are handed out in vertex file order, which for wikipedia is
+ * alphabetical, so an article's neighbors are scattered all over the
+ * graph's arrays, and a large search spends most of its time waiting on
+ * cache misses. Renumbering so that articles that link to each other get
+ * nearby ids means their entries in the CSR arrays (and in a search's
+ * bookkeeping arrays) share cache lines and pages.
+ *
+ * The graph and its article names are renumbered once, after loading. What
+ * is kept is the id of the article on each line of the vertex file, so that
+ * results promised in vertex file order can be put back in it. Articles
+ * added later keep their ids (which are already in the order they were
+ * added), so only the loaded ones are renumbered.
+ */
+final class VertexOrder {
+
+    /* Vertex file order: every id is its own position
+     */
+    static final VertexOrder FILE = new VertexOrder(null);
+
+    /* Vertices per parallel task, when renumbering a graph
+     */
+    private static final int BLOCK = 4096;
+
+    /* ids.get(p) is the id of the article on line p of the vertex file, or
+     * null if that is p
+     */
+    private final IntBuffer ids;
+
+    private VertexOrder(IntBuffer ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * @param ids the id of the article on each line of the vertex file, as in
+     *      a snapshot
+     * @return the order
+     */
+    static VertexOrder of(IntBuffer ids) {
+        return new VertexOrder(ids);
+    }
+
+    /**
+     * Chooses an order for a graph's vertices.
+     * @param ordering how to choose it
+     * @param links the graph
+     * @param backlinks links.reverse()
+     * @return the order
+     */
+    static VertexOrder choose(VertexOrdering ordering, Adjacency links, Adjacency backlinks) {
+        if (ordering == VertexOrdering.FILE) {
+            return FILE;
+        }
+        final int[] sequence = ordering == VertexOrdering.DEGREE ? byDegree(links, backlinks)
+            : ordering == VertexOrdering.BFS ? breadthFirst(links, backlinks, false)
+            : reverse(breadthFirst(links, backlinks, true));
+        return new VertexOrder(IntBuffer.wrap(invert(sequence)));
+    }
+
+    /**
+     * @param position a line of the vertex file (not counting comments or empty
+     *      lines), or for later articles, the order they were added in after those
+     * @return the id of the article there
+     */
+    int id(int position) {
+        return ids == null || position >= ids.limit() ? position : ids.get(position);
+    }
+
+    /**
+     * @param vertices how many vertices there are
+     * @return for each id, its position (see id())
+     */
+    int[] positions(int vertices) {
+        final int[] positions = new int[vertices];
+        for (int p = 0; p < vertices; p++) {
+            positions[id(p)] = p;
+        }
+        return positions;
+    }
+
+    /**
+     * @param byId a value for each id
+     * @return the same values, by position instead (see id()). byId itself if
+     *      the two are the same.
+     */
+    int[] toFileOrder(int[] byId) {
+        if (ids == null) {
+            return byId;
+        }
+        final int[] byPosition = new int[byId.length];
+        for (int p = 0; p < byId.length; p++) {
+            byPosition[p] = byId[id(p)];
+        }
+        return byPosition;
+    }
+
+    /**
+     * @param articles the article names, numbered by position
+     * @return the same names, numbered by id
+     */
+    ArticleDictionary renumber(ArticleDictionary articles) {
+        return ids == null ? articles : articles.reorder(positions(articles.size()));
+    }
+
+    /**
+     * @param graph a graph whose vertices are numbered by position
+     * @return the same graph, with its vertices numbered by id
+     */
+    CompactGraph renumber(CompactGraph graph) {
+        if (ids == null) {
+            return graph;
+        }
+        final int vertices = graph.vertexCount();
+        final int[] positions = positions(vertices);
+        final int[] offsets = new int[vertices + 1];
+        for (int v = 0; v < vertices; v++) {
+            offsets[v + 1] = offsets[v] + graph.degree(positions[v]);
+        }
+
+        // Every vertex fills (and sorts) its own slice, so the slices can be
+        // filled in parallel
+        final int[] targets = new int[offsets[vertices]];
+        IntStream.range(0, (vertices + BLOCK - 1) / BLOCK).parallel().forEach(block -> {
+            final Adjacency.Cursor neighbors = graph.cursor();
+            for (int v = block * BLOCK; v < Math.min(vertices, (block + 1) * BLOCK); v++) {
+                neighbors.reset(positions[v]);
+                int at = offsets[v];
+                for (int w = neighbors.next(); w >= 0; w = neighbors.next()) {
+                    targets[at++] = id(w);
+                }
+                Arrays.sort(targets, offsets[v], offsets[v + 1]);
+            }
+        });
+        return new CompactGraph(offsets, targets);
+    }
+
+    /* The number of links into and out of v
+     */
+    private static int degree(Adjacency links, Adjacency backlinks, int v) {
+        return links.degree(v) + backlinks.degree(v);
+    }
+
+    /* Every vertex, sorted on key(v), then v. Keys must be non-negative.
+     */
+    private static int[] sorted(int vertices, IntUnaryOperator key) {
+        final long[] keyed = new long[vertices];
+        for (int v = 0; v < vertices; v++) {
+            keyed[v] = (long) key.applyAsInt(v) << 32 | v;
+        }
+        Arrays.parallelSort(keyed);
+        final int[] sorted = new int[vertices];
+        for (int i = 0; i < vertices; i++) {
+            sorted[i] = (int) keyed[i];
+        }
+        return sorted;
+    }
+
+    /* Vertices, most links first
+     */
+    private static int[] byDegree(Adjacency links, Adjacency backlinks) {
+        return sorted(links.vertexCount(), v -> Integer.MAX_VALUE - degree(links, backlinks, v));
+    }
+
+    /* Vertices in the order a breadth-first search along links in both
+     * directions reaches them, restarting at the next root whenever it runs
+     * out. Roots are taken most links first; or with cuthillMcKee, fewest links
+     * first (so from the edge of the graph), and then each vertex's unreached
+     * neighbors are queued fewest links first as well.
+     */
+    private static int[] breadthFirst(Adjacency links, Adjacency backlinks, boolean cuthillMcKee) {
+        final int vertices = links.vertexCount();
+        final int[] roots = cuthillMcKee
+            ? sorted(vertices, v -> degree(links, backlinks, v))
+            : byDegree(links, backlinks);
+        final boolean[] reached = new boolean[vertices];
+        final Adjacency.Cursor out = links.cursor();
+        final Adjacency.Cursor in = backlinks.cursor();
+
+        // The sequence is also the queue: head is the next vertex to expand,
+        // and tail is where the next one reached goes
+        final int[] sequence = new int[vertices];
+        long[] neighbors = new long[64];
+        int tail = 0;
+        for (int root : roots) {
+            if (reached[root]) {
+                continue;
+            }
+            reached[root] = true;
+            sequence[tail++] = root;
+            for (int head = tail - 1; head < tail; head++) {
+                final int v = sequence[head];
+                int found = 0;
+                for (int side = 0; side < 2; side++) {
+                    final Adjacency.Cursor cursor = side == 0 ? out : in;
+                    cursor.reset(v);
+                    for (int w = cursor.next(); w >= 0; w = cursor.next()) {
+                        if (!reached[w]) {
+                            reached[w] = true;
+                            if (found == neighbors.length) {
+                                neighbors = Arrays.copyOf(neighbors, found * 2);
+                            }
+                            neighbors[found++] = cuthillMcKee
+                                ? (long) degree(links, backlinks, w) << 32 | w
+                                : w;
+                        }
+                    }
+                }
+                if (cuthillMcKee) {
+                    Arrays.sort(neighbors, 0, found);
+                }
+                for (int i = 0; i < found; i++) {
+                    sequence[tail++] = (int) neighbors[i];
+                }
+            }
+        }
+        return sequence;
+    }
+
+    private static int[] reverse(int[] sequence) {
+        for (int i = 0, j = sequence.length - 1; i < j; i++, j--) {
+            final int swap = sequence[i];
+            sequence[i] = sequence[j];
+            sequence[j] = swap;
+        }
+        return sequence;
+    }
+
+    /* Given the vertices in their new order, each one's new id
+     */
+    private static int[] invert(int[] sequence) {
+        final int[] ids = new int[sequence.length];
+        for (int i = 0; i < sequence.length; i++) {
+            ids[sequence[i]] = i;
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * How a PathFinder numbers its articles internally (see VertexOrder). The
+ * numbering decides where each article's links sit in memory, so it decides
+ * how often a search has to wait on memory rather than on work; it doesn't
+ * change any result, since every method takes and returns article names,
+ * and anything given in vertex file order stays that way.
+ */
+public enum VertexOrdering {
+
+    /**
+     * Vertex file order (for wikipedia's dumps, alphabetical), which has
+     * nothing to do with how articles link to each other.
+     */
+    FILE,
+
+    /**
+     * The order a breadth-first search (ignoring the direction of links)
+     * reaches articles in, starting from the one with the most links. Articles
+     * a search reaches in the same step end up next to each other.
+     */
+    BFS,
+
+    /**
+     * Reverse Cuthill-McKee: breadth-first, starting from an article with the
+     * fewest links and taking each article's neighbors fewest links first,
+     * then reversed. This keeps every link short (in ids), so neighbors mostly
+     * share cache lines and pages.
+     */
+    REVERSE_CUTHILL_MCKEE,
+
+    /**
+     * Most links first. The hubs that most searches pass through end up packed
+     * together, where they stay in cache.
+     */
+    DEGREE
+}
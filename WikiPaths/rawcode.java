@@ -1,74 +1,121 @@
 import java.io.*;
 import java.net.URLDecoder;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.stream.*;
 import java.util.function.*;
 
-public class PathFinder extends MysteryUnweightedGraphImplementation {
+public class PathFinder {
 
-    private final Map<String,Integer> articleToId;
-    private final Map<Integer,String> idToArticle;
+    private final LiveGraph graph;
 
-    private void process (String file, Consumer<String> consumer) {
+    private final VertexOrder order;
+
+    private final AtomicReference<PathCache> cache = new AtomicReference<PathCache>();
+
+    private final AtomicReference<SearchMetrics> metrics = new AtomicReference<SearchMetrics>();
+
+    private static final long IDLE_SECONDS = 30;
+    private final ExecutorService searchThreads = searchThreads();
+
+    private static ExecutorService searchThreads() {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final ThreadPoolExecutor threads = new ThreadPoolExecutor(cores, cores, IDLE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), runnable -> {
+                final Thread thread = new Thread(runnable, "PathFinder search");
+                thread.setDaemon(true);
+                return thread;
+            });
+        threads.allowCoreThreadTimeOut(true);
+        return threads;
+    }
+
+    private static GraphLoader process(String nodeFile, String edgeFile) {
         try {
-            (new BufferedReader(new FileReader (new File(file))))
-                .lines()
-                .filter(line -> !line.equals("") && line.charAt(0) != '#')
-                .forEach(consumer);
-        } catch(Exception e) {
-            System.err.println("Problem processing " + file + "...\n..." + e);
+            final GraphLoader loaded = GraphLoader.isDump(nodeFile)
+                ? GraphLoader.loadDumps(nodeFile, edgeFile)
+                : GraphLoader.load(nodeFile, edgeFile);
+            loaded.problems.forEach(System.err::println);
+            return loaded;
+        } catch(IOException e) {
+            System.err.println("Problem processing " + nodeFile + " and " + edgeFile + "...\n..." + e);
             System.exit(0);
+            return null;
         }
     }
 
     public PathFinder(String nodeFile, String edgeFile) {
+        this(nodeFile, edgeFile, VertexOrdering.FILE);
+    }
+
+    public PathFinder(String nodeFile, String edgeFile, VertexOrdering ordering) {
+        this(nodeFile, edgeFile, ordering, false);
+    }
+
+    public PathFinder(String nodeFile, String edgeFile, VertexOrdering ordering, boolean compressed) {
+
+        final GraphLoader loaded = process(nodeFile, edgeFile);
+
+        order = VertexOrder.choose(ordering, loaded.links, loaded.backlinks);
+        final Adjacency links = compressed(order.renumber(loaded.links), compressed);
+        graph = new LiveGraph(new GraphVersion(order.renumber(loaded.articles), links,
+            compressed(order.renumber(loaded.backlinks), compressed), ComponentIndex.build(links), null),
+            this::invalidate);
+    }
+
+    private static Adjacency compressed(CompactGraph graph, boolean compressed) {
+        return compressed ? CompressedGraph.compress(graph, CompressedGraph.WINDOW) : graph;
+    }
+
+    private PathFinder(ArticleIndex articles, Adjacency links, Adjacency backlinks, VertexOrder order) {
+        this.order = order;
+        graph = new LiveGraph(new GraphVersion(articles, links, backlinks, null, null), this::invalidate);
+    }
+
+    public static PathFinder open(String snapshotFile) throws IOException {
+        final GraphSnapshot snapshot = GraphSnapshot.open(snapshotFile);
+        return new PathFinder(snapshot.articles, snapshot.links, snapshot.backlinks, snapshot.order);
+    }
+
+    public void save(String snapshotFile) throws IOException {
+        final GraphVersion current = graph.current();
+        GraphSnapshot.write(snapshotFile, current.articles, current.links, current.backlinks, order);
+    }
 
-        articleToId = new HashMap<String,Integer>();
-        idToArticle = new HashMap<Integer,String>();
+    private void invalidate() {
+        Optional.ofNullable(cache.get()).ifPresent(PathCache::invalidate);
+    }
+
+    private int[] search(int start, int end) {
 
-        process(nodeFile, line -> {
-            Integer id = addVertex();
-            articleToId.put(line, id);
-            idToArticle.put(id, line);
-        });
-        process(edgeFile, line -> {
-            String[] links = line.split("\t");
-            addEdge(articleToId.get(links[0]), articleToId.get(links[1]));
-        });
+        final GraphVersion current = graph.current();
+        final SearchContext context = SearchContext.forThread(current.links.vertexCount());
+        final LandmarkIndex index = current.landmarks;
+        return SearchMetrics.measure(metrics.get(), context, current.articles, start, end, () ->
+            !current.mayReach(start, end) ? null : index == null
+                ? context.bidirectionalPath(current.links, current.backlinks, start, end)
+                : context.guidedPath(current.links, start, end, v -> index.lower(v, end)));
     }
 
     private Optional<Stream<String>> travel(String starticle, String endicle) {
 
-        final Integer start = articleToId.get(starticle);
-        final Integer end = articleToId.get(endicle);
-
-        final Queue<Integer> q = new ArrayDeque<Integer>();
-
-        final Map<Integer,Optional<Integer>> visited = new HashMap<Integer,Optional<Integer>>();
-        idToArticle.keySet().forEach((Integer x) -> visited.put(x, Optional.empty()));
-
-        return Stream.iterate(Optional.of(start), stepM ->
-            stepM.flatMap(step -> {
-                getNeighbors(step).forEach(neighbor -> {
-                    if(!visited.get(neighbor).isPresent()) {
-                        visited.put(neighbor, stepM);
-                        q.add(neighbor);
-                }});
-                return Optional.ofNullable(q.poll());
-        })).filter(stepM ->
-            stepM.map(step -> step.equals(end)).orElse(true)
-        ).findFirst().get().map(dummy -> {
-            final Stream.Builder<Integer> bob = Stream.builder();
-            Stream.iterate(end, step -> visited.get(step).get())
-                  .peek(bob)
-                  .allMatch(step -> !step.equals(start));
-            return bob.build().map(x -> idToArticle.get(x));
-    });}
+        final int start = graph.current().articles.id(starticle);
+        final int end = graph.current().articles.id(endicle);
+
+        final Optional<int[]> pathM = Optional.ofNullable(cache.get())
+            .map(paths -> paths.get(start, end, () -> search(start, end)))
+            .orElseGet(() -> Optional.ofNullable(search(start, end)));
+
+        final ArticleIndex articles = graph.current().articles;
+        return pathM.map(path -> IntStream.range(0, path.length)
+                .mapToObj(i -> articles.name(path[path.length - 1 - i])));
+    }
 
     private Optional<Stream<String>> travelThrough(String start, String middle, String end) {
         return travel(start, middle).flatMap(x ->
                     travel(middle, end).map(y ->
-                        Stream.concat(x, y.skip(1))
+                        Stream.concat(y, x.skip(1))
     ));}
 
     final private static Function<String,String> safeDecode = x -> {
@@ -81,22 +128,23 @@ public class PathFinder extends MysteryUnweightedGraphImplementation {
 
     public static void main(String[] args) {
 
-        if(args.length != 2 && (args.length != 3 && args[2].equals("useIntermediateNode"))) {
+        if(args.length != 2 && !(args.length == 3 && args[2].equals("useIntermediateNode"))) {
             System.out.println("Please check your arguments");
             return;
         }
             
         final PathFinder finder = new PathFinder(args[0], args[1]);
-        final String[] articles = finder.articleToId.keySet().toArray(new String[0]);
 
-        if(articles.length == 0) {
+        final ArticleIndex articles = finder.graph.current().articles;
+
+        if(articles.size() == 0) {
             System.out.println("Empty vertex file. Unable to choose vertecies.");
             return;
         }
 
         final Iterator<String> randicles = (new Random())
-            .ints(0, articles.length)
-            .mapToObj(x -> articles[x])
+            .ints(0, articles.size())
+            .mapToObj(articles::name)
             .iterator();
 
         final String a1 = randicles.next();
@@ -104,6 +152,7 @@ public class PathFinder extends MysteryUnweightedGraphImplementation {
         final String a3 = randicles.next();
 
         final String message;
+
         final Optional<Stream<String>> path;
 
         if(args.length == 2) {
@@ -123,16 +172,61 @@ public class PathFinder extends MysteryUnweightedGraphImplementation {
         System.out.println("\n#\t" + message + ":\n#\t" +
             arrowsM.map(arrows ->
                 "Length = " + (arrows.split(" --> ").length - 1) + "\n#\t" + arrows
-            ).orElse("No path found :(") + "\n");
+            ).orElse("No path found :(")
+        + "\n");
     }
 
-
     public int getShortestPathLength(String node1, String node2) {
-        return travel(node1, node2)
+        final int[] bounds = getShortestPathLengthBounds(node1, node2);
+        return bounds[0] == bounds[1] ? bounds[0] : travel(node1, node2)
                 .map(x -> (int) x.count())
                 .orElse(0) - 1;
     }
 
+    public int[] getShortestPathLengthBounds(String node1, String node2) {
+        final GraphVersion current = graph.current();
+        final int start = current.articles.id(node1);
+        final int end = current.articles.id(node2);
+        return !current.mayReach(start, end) ? new int[] { -1, -1 }
+            : Optional.ofNullable(current.landmarks)
+            .map(index -> index.lower(start, end) < 0
+                ? new int[] { -1, -1 }
+                : new int[] { index.lower(start, end), index.upper(start, end) })
+            .orElse(start == end ? new int[] { 0, 0 } : new int[] { 0, Integer.MAX_VALUE });
+    }
+
+    public void useLandmarks(int count, boolean farthest) {
+        final GraphVersion current = graph.current();
+        graph.useLandmarks(current, LandmarkIndex.build(current.links, current.backlinks, count, farthest));
+    }
+
+    public void saveLandmarks(String landmarkFile) throws IOException {
+        Optional.ofNullable(graph.current().landmarks)
+            .orElseThrow(() -> new IllegalStateException("No landmarks to save"))
+            .save(landmarkFile, order);
+    }
+
+    public void loadLandmarks(String landmarkFile) throws IOException {
+        final GraphVersion current = graph.current();
+        graph.useLandmarks(current, LandmarkIndex.load(landmarkFile, current.links.vertexCount(), order));
+    }
+
+    public PathCache useCache(long maxBytes) {
+        final PathCache paths = new PathCache(maxBytes);
+        cache.set(paths);
+        return paths;
+    }
+
+    public SearchMetrics useMetrics() {
+        final SearchMetrics stats = new SearchMetrics();
+        metrics.set(stats);
+        return stats;
+    }
+
+    public void stopMetrics() {
+        metrics.set(null);
+    }
+
     final private static Function<Stream<String>,List<String>> listify = x -> {
         List<String> list = x.collect(Collectors.toList());
         Collections.reverse(list);
@@ -146,4 +240,182 @@ public class PathFinder extends MysteryUnweightedGraphImplementation {
     public List<String> getShortestPath(String node1, String intermediateNode, String node2) {
         return travelThrough(node1, intermediateNode, node2).map(listify).orElse(null);
     }
+
+    private List<String> names(int[] path) {
+        final ArticleIndex articles = graph.current().articles;
+        return Arrays.stream(path)
+            .mapToObj(articles::name)
+            .collect(Collectors.toList());
+    }
+
+    private Map<Integer,List<String>> travelFrom(String starticle, List<Integer> positions,
+            List<? extends Map.Entry<String,String>> pairs) {
+
+        final GraphVersion current = graph.current();
+        final int start = current.articles.id(starticle);
+
+        final int[] ends = positions.stream()
+            .mapToInt(i -> current.articles.id(pairs.get(i).getValue()))
+            .map(end -> current.mayReach(start, end) ? end : -1)
+            .toArray();
+
+        final int[][] paths = start < 0
+            ? new int[ends.length][]
+            : SearchContext.forThread(current.links.vertexCount()).pathsFrom(current.links, start, ends);
+
+        return IntStream.range(0, ends.length).boxed().collect(
+            HashMap::new,
+            (found, i) -> found.put(positions.get(i), Optional.ofNullable(paths[i])
+                .map(this::names)
+                .orElse(null)),
+            HashMap::putAll);
+    }
+
+    public List<List<String>> getShortestPaths(List<? extends Map.Entry<String,String>> pairs) {
+        return getShortestPaths(pairs, searchThreads);
+    }
+
+    public List<List<String>> getShortestPaths(List<? extends Map.Entry<String,String>> pairs,
+            Executor executor) {
+
+        final Map<String,List<Integer>> groups = IntStream.range(0, pairs.size()).boxed()
+            .collect(Collectors.groupingBy(i -> pairs.get(i).getKey()));
+
+        final List<CompletableFuture<Map<Integer,List<String>>>> searches = groups.entrySet().stream()
+            .map(group -> CompletableFuture.supplyAsync(
+                () -> travelFrom(group.getKey(), group.getValue(), pairs), executor))
+            .collect(Collectors.toList());
+
+        final Map<Integer,List<String>> found = new HashMap<Integer,List<String>>();
+        searches.forEach(search -> found.putAll(search.join()));
+        return IntStream.range(0, pairs.size())
+            .mapToObj(found::get)
+            .collect(Collectors.toList());
+    }
+
+    public List<String> getShortestPathInParallel(String node1, String node2) {
+        final GraphVersion current = graph.current();
+        final int start = current.articles.id(node1);
+        final int end = current.articles.id(node2);
+        return Optional.ofNullable(current.mayReach(start, end) ? current.frontierSearch.path(start, end) : null)
+            .map(this::names)
+            .orElse(null);
+    }
+
+    public int[] getShortestPathLengths(String node1) {
+        final GraphVersion current = graph.current();
+        final int start = current.articles.id(node1);
+        return start < 0 ? null : order.toFileOrder(current.frontierSearch.distancesFrom(start));
+    }
+
+    private List<Integer> rankThrough(GraphVersion current, SearchContext context, String starticle,
+            Collection<String> intermediates, String endicle) {
+
+        final int start = current.articles.id(starticle);
+        final int end = current.articles.id(endicle);
+        final int[] vias = intermediates.stream()
+            .mapToInt(current.articles::id)
+            .filter(via -> via >= 0)
+            .distinct()
+            .toArray();
+        if(start < 0 || end < 0) {
+            return Collections.emptyList();
+        }
+
+        context.searchAround(current.links, current.backlinks, start, vias, end);
+
+        final ToIntFunction<Integer> length = via -> context.distanceFrom(via) + context.distanceTo(via);
+        return Arrays.stream(vias).boxed()
+            .filter(via -> context.distanceFrom(via) >= 0 && context.distanceTo(via) >= 0)
+            .sorted(Comparator.comparingInt(length))
+            .collect(Collectors.toList());
+    }
+
+    public List<String> getShortestPathThroughAny(String node1, Collection<String> intermediateNodes,
+            String node2) {
+        final GraphVersion current = graph.current();
+        final SearchContext context = SearchContext.forThread(current.links.vertexCount());
+        return rankThrough(current, context, node1, intermediateNodes, node2).stream()
+            .findFirst()
+            .map(via -> names(context.pathThrough(via)))
+            .orElse(null);
+    }
+
+    public List<Map.Entry<String,Integer>> getBestIntermediateNodes(String node1,
+            Collection<String> intermediateNodes, String node2, int k) {
+        final GraphVersion current = graph.current();
+        final SearchContext context = SearchContext.forThread(current.links.vertexCount());
+        return rankThrough(current, context, node1, intermediateNodes, node2).stream()
+            .limit(k)
+            .map(via -> new AbstractMap.SimpleImmutableEntry<String,Integer>(
+                current.articles.name(via), context.distanceFrom(via) + context.distanceTo(via)))
+            .collect(Collectors.toList());
+    }
+
+    public int getComponentId(String node) {
+        final GraphVersion current = graph.indexed();
+        final int id = current.articles.id(node);
+        return id < 0 ? -1 : current.components.component(id);
+    }
+
+    public int getComponentSize(int componentId) {
+        return graph.indexed().components.size(componentId);
+    }
+
+    public int getComponentCount() {
+        return graph.indexed().components.count();
+    }
+
+    public DistanceProfile getDistanceProfile(int samples, long seed) {
+        final int count = Optional.of(samples)
+            .filter(n -> n >= 0)
+            .orElseThrow(() -> new IllegalArgumentException("Can't search from " + samples + " articles"));
+        final GraphVersion current = graph.indexed();
+        final int articles = current.links.vertexCount();
+
+        return profile(current, (articles == 0 ? IntStream.empty() : new Random(seed).ints(0, articles))
+            .distinct()
+            .limit(Math.min(count, articles))
+            .map(order::id)
+            .toArray());
+    }
+
+    public DistanceProfile getDistanceProfile(List<String> sources) {
+        final GraphVersion current = graph.indexed();
+        return profile(current, sources.stream()
+            .mapToInt(this::known)
+            .filter(id -> id < current.links.vertexCount())
+            .toArray());
+    }
+
+    private static DistanceProfile profile(GraphVersion current, int[] sources) {
+        return new MultiSourceSearch(current.links, current.backlinks, current.components)
+            .profile(sources, current.articles);
+    }
+
+    private int known(String node) {
+        return Optional.of(graph.current().articles.id(node))
+            .filter(id -> id >= 0)
+            .orElseThrow(() -> new IllegalArgumentException("No article named " + node));
+    }
+
+    public boolean addArticle(String node) {
+        return graph.change(current -> current.withArticle(node));
+    }
+
+    public boolean addLink(String node1, String node2) {
+        final int from = known(node1);
+        final int to = known(node2);
+        return graph.change(current -> current.withLink(from, to));
+    }
+
+    public boolean removeLink(String node1, String node2) {
+        final int from = known(node1);
+        final int to = known(node2);
+        return graph.change(current -> current.withoutLink(from, to));
+    }
+
+    public void compact() {
+        graph.compact();
+    }
 }